@@ -0,0 +1,114 @@
+package com.mrkirby153.bfs.benchmark;
+
+import com.mrkirby153.bfs.Pair;
+import com.mrkirby153.bfs.connection.H2ConnectionFactory;
+import com.mrkirby153.bfs.connection.PooledConnectionFactory;
+import com.mrkirby153.bfs.model.Model;
+import com.mrkirby153.bfs.model.annotations.AutoIncrementing;
+import com.mrkirby153.bfs.model.annotations.Table;
+import com.mrkirby153.bfs.query.DB;
+import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.grammar.H2Grammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of model CRUD and bulk inserts end to end against an embedded H2
+ * database, so that regressions can be reproduced without a database server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CrudBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int BULK_SIZE = 100;
+
+    private PooledConnectionFactory factory;
+    private List<Map<String, Object>> bulk;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        QueryBuilder.DEFAULT_GRAMMAR = new H2Grammar();
+        factory = new PooledConnectionFactory(new H2ConnectionFactory("crud_benchmark"), 1, 8);
+        QueryBuilder.defaultConnectionFactory = factory;
+        DB.executeUpdate("DROP TABLE IF EXISTS bench_users");
+        DB.executeUpdate(
+            "CREATE TABLE bench_users (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(64), "
+                + "score INT)");
+        List<Map<String, Object>> seed = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            seed.add(row("seed" + i, i));
+        }
+        new QueryBuilder().table("bench_users").insertBulk(seed).join();
+        bulk = new ArrayList<>();
+        for (int i = 0; i < BULK_SIZE; i++) {
+            bulk.add(row("bulk" + i, i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public Long createModel() {
+        User user = new User();
+        user.name = "created";
+        user.score = 1;
+        user.save();
+        return user.id;
+    }
+
+    @Benchmark
+    public User findModel() {
+        return Model.where(User.class, "id", randomId()).first();
+    }
+
+    @Benchmark
+    public int updateRow() {
+        return new QueryBuilder().table("bench_users").where("id", randomId())
+            .update(Collections.singletonList(new Pair<>("score", 2)));
+    }
+
+    @Benchmark
+    public Integer insertBulk() {
+        return new QueryBuilder().table("bench_users").insertBulk(bulk).join();
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+    }
+
+    private static Map<String, Object> row(String name, int score) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", name);
+        row.put("score", score);
+        return row;
+    }
+
+    @Table("bench_users")
+    @AutoIncrementing
+    public static class User extends Model {
+
+        public Long id;
+        public String name;
+        public int score;
+    }
+}
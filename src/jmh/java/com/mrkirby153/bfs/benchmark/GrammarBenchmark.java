@@ -0,0 +1,72 @@
+package com.mrkirby153.bfs.benchmark;
+
+import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
+import com.mrkirby153.bfs.query.grammar.MySqlGrammar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of compiling a typical lookup query with {@link MySqlGrammar}, with and
+ * without the compiled query cache. {@link #compileSelectBaseline()} compiles the same query with
+ * the reflective grammar it replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GrammarBenchmark {
+
+    private MySqlGrammar uncached;
+    private MySqlGrammar cached;
+    private LegacyMySqlGrammar legacy;
+    private QueryBuilder uncachedQuery;
+    private QueryBuilder cachedQuery;
+
+    @Setup
+    public void setup() {
+        uncached = new MySqlGrammar();
+        uncached.setCacheSize(0);
+        cached = new MySqlGrammar();
+        legacy = new LegacyMySqlGrammar();
+        uncachedQuery = lookup(uncached);
+        cachedQuery = lookup(cached);
+    }
+
+    @Benchmark
+    public String compileSelectBaseline() {
+        return legacy.compileSelect(uncachedQuery);
+    }
+
+    @Benchmark
+    public String compileSelect() {
+        return uncached.compileSelect(uncachedQuery);
+    }
+
+    @Benchmark
+    public String compileSelectCached() {
+        return cached.compileSelect(cachedQuery);
+    }
+
+    @Benchmark
+    public String compileUpdate() {
+        return uncached.compileUpdate(uncachedQuery, "name", "email", "updated_at");
+    }
+
+    private static QueryBuilder lookup(MySqlGrammar grammar) {
+        return new QueryBuilder(grammar).table("users")
+            .select("users.id", "users.name", "email", "roles.name")
+            .leftJoin("roles", "roles.id", "=", "users.role_id")
+            .where("users.id", 5)
+            .where("status", "!=", "banned")
+            .whereIn("role_id", new Object[]{1, 2, 3})
+            .orderBy("users.id", Direction.DESC)
+            .limit(10);
+    }
+}
@@ -0,0 +1,40 @@
+package com.mrkirby153.bfs;
+
+import lombok.Data;
+
+/**
+ * A point in time snapshot of a cache's statistics
+ */
+@Data
+public class CacheStats {
+
+    /**
+     * The number of lookups that were served from the cache
+     */
+    private final long hits;
+
+    /**
+     * The number of lookups that were not in the cache
+     */
+    private final long misses;
+
+    /**
+     * The number of entries removed from the cache to make room for new ones
+     */
+    private final long evictions;
+
+    /**
+     * The number of entries currently in the cache
+     */
+    private final long size;
+
+    /**
+     * Gets the ratio of lookups that were served from the cache
+     *
+     * @return The hit rate, between 0 and 1
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -1,5 +1,7 @@
 package com.mrkirby153.bfs.connection;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.sql.Connection;
 
 /**
@@ -13,4 +15,27 @@ public interface ConnectionFactory {
      * @return The SQL connection
      */
     Connection getConnection();
+
+    /**
+     * Gets a SQL connection for executing the given type of statement. Factories that route
+     * statements to different databases can override this, by default it is the same as
+     * {@link #getConnection()}
+     *
+     * @param type The type of statement that will be executed on the connection
+     *
+     * @return The SQL connection
+     */
+    default Connection getConnection(StatementType type) {
+        return getConnection();
+    }
+
+    /**
+     * Gets a snapshot of the factory's connection statistics
+     *
+     * @return The statistics, or null if the factory does not pool connections
+     */
+    @Nullable
+    default PoolStats getStats() {
+        return null;
+    }
 }
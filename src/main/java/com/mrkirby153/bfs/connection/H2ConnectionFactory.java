@@ -0,0 +1,55 @@
+package com.mrkirby153.bfs.connection;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * A connection to an embedded H2 database, for running queries without a database server.
+ * <br>
+ * Unquoted identifiers are folded to lower case, matching the quoted lower case identifiers emitted
+ * by {@link com.mrkirby153.bfs.query.grammar.H2Grammar}. The H2 driver must be on the classpath
+ */
+public class H2ConnectionFactory implements ConnectionFactory {
+
+    private final String url;
+
+    /**
+     * Creates a factory for a named in-memory database. The database lives until the JVM exits
+     *
+     * @param database The name of the database
+     */
+    public H2ConnectionFactory(String database) {
+        this.url = String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE",
+            database);
+    }
+
+    /**
+     * Creates a factory for a database stored in a file
+     *
+     * @param file The path of the database, without the {@code .mv.db} extension
+     */
+    public H2ConnectionFactory(Path file) {
+        this.url = String.format("jdbc:h2:file:%s;DATABASE_TO_LOWER=TRUE",
+            file.toAbsolutePath());
+    }
+
+    @Override
+    public Connection getConnection() {
+        try {
+            return DriverManager.getConnection(getConnectionUrl());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create a connection to the database", e);
+        }
+    }
+
+    /**
+     * Gets the connection URL for the database
+     *
+     * @return The connection URL
+     */
+    public String getConnectionUrl() {
+        return url;
+    }
+}
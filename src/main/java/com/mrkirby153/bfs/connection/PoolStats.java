@@ -0,0 +1,93 @@
+package com.mrkirby153.bfs.connection;
+
+import com.mrkirby153.bfs.CacheStats;
+import lombok.Data;
+
+/**
+ * A point in time snapshot of a connection pool's statistics
+ */
+@Data
+public class PoolStats {
+
+    /**
+     * The upper bounds (in ms, inclusive) of the borrow wait time histogram buckets. Waits longer
+     * than the last bound are counted in an extra overflow bucket
+     */
+    public static final long[] BORROW_WAIT_BUCKETS = new long[]{
+        1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000
+    };
+
+    /**
+     * The number of connections currently borrowed
+     */
+    private final int active;
+
+    /**
+     * The number of connections currently idle in the pool
+     */
+    private final int idle;
+
+    /**
+     * The number of borrowers currently waiting for a connection
+     */
+    private final int waiting;
+
+    /**
+     * The maximum number of connections the pool will open
+     */
+    private final int maxSize;
+
+    /**
+     * The total number of connections that have been borrowed
+     */
+    private final long borrows;
+
+    /**
+     * The number of borrows that timed out waiting for a connection
+     */
+    private final long timeouts;
+
+    /**
+     * The number of connections discarded because they failed validation
+     */
+    private final long validationFailures;
+
+    /**
+     * The number of connections that were held longer than the leak detection threshold
+     */
+    private final long leaksDetected;
+
+    /**
+     * The number of borrows in each bucket of {@link #BORROW_WAIT_BUCKETS}. The last element counts
+     * the borrows that waited longer than the last bucket
+     */
+    private final long[] borrowWaitHistogram;
+
+    /**
+     * The total time (in ns) borrowers spent waiting for a connection
+     */
+    private final long totalBorrowWaitNanos;
+
+    /**
+     * The statistics of the pool's prepared statement caches
+     */
+    private final CacheStats statementCache;
+
+    /**
+     * Gets the total number of open connections
+     *
+     * @return The number of connections
+     */
+    public int getTotal() {
+        return active + idle;
+    }
+
+    /**
+     * Gets the average time (in ms) spent waiting to borrow a connection
+     *
+     * @return The average wait time
+     */
+    public double getAverageBorrowWait() {
+        return borrows == 0 ? 0 : totalBorrowWaitNanos / 1_000_000D / borrows;
+    }
+}
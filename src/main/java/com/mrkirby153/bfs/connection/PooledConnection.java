@@ -0,0 +1,154 @@
+package com.mrkirby153.bfs.connection;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection managed by a {@link PooledConnectionFactory}
+ */
+class PooledConnection {
+
+    /**
+     * The pool that owns this connection
+     */
+    private final PooledConnectionFactory pool;
+
+    /**
+     * The physical connection to the database
+     */
+    @Getter
+    private final Connection connection;
+
+    /**
+     * The time (in ms) this connection was created
+     */
+    @Getter
+    private final long createdAt = System.currentTimeMillis();
+
+    /**
+     * The time (in ms) this connection was last returned to the pool
+     */
+    @Getter
+    @Setter
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * The time (in ms) this connection was last borrowed
+     */
+    @Getter
+    private volatile long borrowedAt;
+
+    /**
+     * The stack trace of the last borrower, if leak detection is enabled
+     */
+    @Getter
+    private volatile Throwable borrowTrace;
+
+    /**
+     * If the current borrow has already been reported as a leak
+     */
+    @Getter
+    @Setter
+    private volatile boolean leakReported;
+
+    /**
+     * The connection's prepared statement cache, or null if statement caching is disabled
+     */
+    @Getter
+    private final StatementCache statementCache;
+
+    PooledConnection(PooledConnectionFactory pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+        int cacheSize = pool.getStatementCacheSize();
+        this.statementCache =
+            cacheSize > 0 ? new StatementCache(pool, connection, cacheSize) : null;
+    }
+
+    /**
+     * Creates a new handle to this connection. Closing the handle returns the connection to the
+     * pool, after which the handle can no longer be used.
+     *
+     * @param trace The stack trace of the borrower, or null if it is not being tracked
+     *
+     * @return The handle
+     */
+    Connection borrow(Throwable trace) {
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowTrace = trace;
+        this.leakReported = false;
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class[]{Connection.class}, new Handle());
+    }
+
+    /**
+     * Closes the physical connection
+     */
+    void closePhysical() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Ignore, the connection is being discarded
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledConnection{" + connection + "}";
+    }
+
+    /**
+     * Invocation handler that delegates to the physical connection until the handle is closed
+     */
+    private class Handle implements InvocationHandler {
+
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return PooledConnection.this.toString();
+            }
+            if (closed) {
+                throw new SQLException("The connection has been returned to the pool");
+            }
+            if (statementCache != null && method.getName().equals("prepareStatement")) {
+                if (args.length == 1) {
+                    return statementCache
+                        .prepare((Connection) proxy, (String) args[0],
+                            Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && args[1] instanceof Integer) {
+                    return statementCache
+                        .prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.mrkirby153.bfs.connection;
+
+import com.mrkirby153.bfs.CacheStats;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ConnectionFactory} that pools connections created by another connection factory.
+ * <br>
+ * Connections handed out by this factory are returned to the pool when {@link Connection#close()}
+ * is called, so they can be used in try-with-resources blocks exactly like unpooled connections.
+ */
+@Slf4j
+public class PooledConnectionFactory implements ConnectionFactory, AutoCloseable {
+
+    /**
+     * The interval (in ms) between runs of the housekeeping task
+     */
+    private static final long HOUSEKEEPING_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The interval (in ms) between checks for leaked connections
+     */
+    private static final long LEAK_DETECTION_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * The longest a borrower will wait on a hand-off before re-checking the idle connections
+     */
+    private static final long MAX_WAIT_SLICE = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    /**
+     * The factory used to create the physical connections
+     */
+    private final ConnectionFactory delegate;
+
+    /**
+     * The minimum amount of connections kept open
+     */
+    @Getter
+    private final int minSize;
+
+    /**
+     * The maximum amount of connections that can be open at once
+     */
+    @Getter
+    private final int maxSize;
+
+    /**
+     * The amount of time (in ms) a connection can be idle before it is closed. Connections are only
+     * evicted while the pool has more than {@link #minSize} connections
+     */
+    @Getter
+    @Setter
+    private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The maximum amount of time (in ms) a connection is kept open. Connections are retired when
+     * they are returned after this time. Set to 0 to disable
+     */
+    @Getter
+    @Setter
+    private long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * The maximum amount of time (in ms) to wait for a connection to become available
+     */
+    @Getter
+    @Setter
+    private long connectionTimeout = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Connections that have been idle for longer than this amount of time (in ms) are validated
+     * before they are handed out. Set to 0 to validate on every borrow
+     */
+    @Getter
+    @Setter
+    private long validationInterval = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The amount of time (in seconds) to wait for a connection to be validated
+     */
+    @Getter
+    @Setter
+    private int validationTimeout = 5;
+
+    /**
+     * The amount of time (in ms) a connection can be borrowed before it is reported as a possible
+     * leak. Set to 0 to disable leak detection
+     */
+    @Getter
+    @Setter
+    private long leakDetectionThreshold = 0;
+
+    /**
+     * The maximum number of prepared statements cached per connection. Set to 0 to disable
+     * statement caching. Changes only apply to connections opened afterwards.
+     * <br>
+     * MySQL only prepares statements on the server when {@code useServerPrepStmts=true} is set on
+     * the connection
+     */
+    @Getter
+    @Setter
+    private int statementCacheSize = 64;
+
+    /**
+     * Idle connections. The most recently returned connection is at the head
+     */
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Used to hand returned connections directly to a waiting borrower
+     */
+    private final SynchronousQueue<PooledConnection> handoff = new SynchronousQueue<>();
+
+    /**
+     * The total number of open connections, idle and borrowed
+     */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    /**
+     * The number of borrowers waiting for a connection
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Connections that are currently borrowed
+     */
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder totalBorrowWait = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+    private final AtomicLongArray borrowWaitHistogram = new AtomicLongArray(
+        PoolStats.BORROW_WAIT_BUCKETS.length + 1);
+
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed = false;
+
+    public PooledConnectionFactory(ConnectionFactory delegate, int minSize, int maxSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                String.format("Invalid pool size (min: %d, max: %d)", minSize, maxSize));
+        }
+        this.delegate = delegate;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        String threadName = String.format("bfs-pool-%d-housekeeper", poolNumber.getAndIncrement());
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, 0, HOUSEKEEPING_INTERVAL,
+            TimeUnit.MILLISECONDS);
+        this.housekeeper.scheduleWithFixedDelay(this::detectLeaks, LEAK_DETECTION_INTERVAL,
+            LEAK_DETECTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() {
+        if (closed) {
+            throw new IllegalStateException("The connection pool has been closed");
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(connectionTimeout);
+        boolean waited = false;
+        try {
+            while (true) {
+                boolean created = false;
+                PooledConnection connection = idle.pollFirst();
+                if (connection == null) {
+                    connection = tryCreate();
+                    created = connection != null;
+                }
+                if (connection == null) {
+                    if (!waited) {
+                        waited = true;
+                        waiting.incrementAndGet();
+                    }
+                    connection = awaitConnection(deadline);
+                }
+                if (connection == null) {
+                    continue;
+                }
+                if (isExpired(connection) || (!created && !validate(connection))) {
+                    discard(connection);
+                    continue;
+                }
+                recordBorrow(System.nanoTime() - start);
+                borrowed.add(connection);
+                return connection.borrow(leakDetectionThreshold > 0 ? new Exception(
+                    "Connection borrowed by " + Thread.currentThread().getName()) : null);
+            }
+        } finally {
+            if (waited) {
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public PoolStats getStats() {
+        int idle = this.idle.size();
+        long[] histogram = new long[borrowWaitHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = borrowWaitHistogram.get(i);
+        }
+        return new PoolStats(Math.max(totalConnections.get() - idle, 0), idle, waiting.get(),
+            maxSize, borrows.sum(), timeouts.sum(), validationFailures.sum(),
+            leaksDetected.sum(), histogram, totalBorrowWait.sum(), getStatementCacheStats());
+    }
+
+    /**
+     * Gets the statistics of the prepared statement caches of all connections in the pool
+     *
+     * @return The statement cache statistics
+     */
+    public CacheStats getStatementCacheStats() {
+        long size = 0;
+        for (PooledConnection connection : idle) {
+            size += connection.getStatementCache() != null ? connection.getStatementCache().size()
+                : 0;
+        }
+        for (PooledConnection connection : borrowed) {
+            size += connection.getStatementCache() != null ? connection.getStatementCache().size()
+                : 0;
+        }
+        return new CacheStats(statementHits.sum(), statementMisses.sum(),
+            statementEvictions.sum(), size);
+    }
+
+    /**
+     * Gets the total number of open connections
+     *
+     * @return The number of open connections
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Gets the number of connections that are not currently in use
+     *
+     * @return The number of idle connections
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Closes all idle connections and shuts down the pool. Borrowed connections are closed when they
+     * are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection);
+        }
+    }
+
+    /**
+     * Returns a connection to the pool
+     *
+     * @param connection The connection to return
+     */
+    void release(PooledConnection connection) {
+        borrowed.remove(connection);
+        if (connection.getStatementCache() != null) {
+            connection.getStatementCache().releaseAll();
+        }
+        if (closed || isExpired(connection) || !reset(connection)) {
+            discard(connection);
+            return;
+        }
+        connection.setLastUsed(System.currentTimeMillis());
+        if (waiting.get() > 0 && handoff.offer(connection)) {
+            return;
+        }
+        idle.offerFirst(connection);
+    }
+
+    void recordStatementHit() {
+        statementHits.increment();
+    }
+
+    void recordStatementMiss() {
+        statementMisses.increment();
+    }
+
+    void recordStatementEviction() {
+        statementEvictions.increment();
+    }
+
+    /**
+     * Waits for a connection to be handed off by a returning borrower
+     *
+     * @param deadline The time (from {@link System#nanoTime()}) to stop waiting at
+     *
+     * @return The connection, or null if none was handed off in this slice
+     */
+    private PooledConnection awaitConnection(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            timeouts.increment();
+            throw new IllegalStateException(String
+                .format("Timed out after %d ms waiting for a connection (%d/%d in use)",
+                    connectionTimeout, totalConnections.get() - idle.size(), maxSize));
+        }
+        try {
+            return handoff.poll(Math.min(remaining, MAX_WAIT_SLICE), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    /**
+     * Checks if an idle connection is still usable. To keep borrowing cheap, only connections that
+     * have been idle for longer than the {@link #validationInterval} are checked
+     *
+     * @param connection The connection to validate
+     *
+     * @return True if the connection can be used
+     */
+    private boolean validate(PooledConnection connection) {
+        if (System.currentTimeMillis() - connection.getLastUsed() <= validationInterval) {
+            return true;
+        }
+        try {
+            if (connection.getConnection().isValid(validationTimeout)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            log.debug("Could not validate connection {}", connection, e);
+        }
+        log.warn("Connection {} failed validation, discarding it", connection);
+        validationFailures.increment();
+        return false;
+    }
+
+    private void recordBorrow(long waitNanos) {
+        borrows.increment();
+        totalBorrowWait.add(waitNanos);
+        long waitMs = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        int bucket = 0;
+        while (bucket < PoolStats.BORROW_WAIT_BUCKETS.length
+            && waitMs > PoolStats.BORROW_WAIT_BUCKETS[bucket]) {
+            bucket++;
+        }
+        borrowWaitHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Reports connections that have been borrowed for longer than the leak detection threshold
+     */
+    private void detectLeaks() {
+        if (leakDetectionThreshold <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection connection : borrowed) {
+            long held = now - connection.getBorrowedAt();
+            if (!connection.isLeakReported() && held > leakDetectionThreshold) {
+                connection.setLeakReported(true);
+                leaksDetected.increment();
+                log.warn("Connection {} has been borrowed for {} ms, possible leak detected",
+                    connection, held, connection.getBorrowTrace());
+            }
+        }
+    }
+
+    /**
+     * Opens a new connection if the pool is not at its maximum size
+     *
+     * @return The new connection, or null if the pool is full
+     */
+    private PooledConnection tryCreate() {
+        int current;
+        do {
+            current = totalConnections.get();
+            if (current >= maxSize) {
+                return null;
+            }
+        } while (!totalConnections.compareAndSet(current, current + 1));
+        try {
+            PooledConnection connection = new PooledConnection(this, delegate.getConnection());
+            log.debug("Opened connection {} ({}/{})", connection, current + 1, maxSize);
+            return connection;
+        } catch (RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Restores the connection's state so it can be handed to the next borrower
+     *
+     * @param connection The connection
+     *
+     * @return True if the connection can be reused
+     */
+    private boolean reset(PooledConnection connection) {
+        try {
+            Connection c = connection.getConnection();
+            if (c.isClosed()) {
+                return false;
+            }
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("Could not reset connection {}, discarding it", connection, e);
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection connection) {
+        return maxLifetime > 0
+            && System.currentTimeMillis() - connection.getCreatedAt() > maxLifetime;
+    }
+
+    private void discard(PooledConnection connection) {
+        totalConnections.decrementAndGet();
+        log.debug("Closing connection {}", connection);
+        connection.closePhysical();
+    }
+
+    /**
+     * Evicts idle and expired connections and tops the pool back up to its minimum size
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection connection : idle) {
+            boolean idleTooLong = now - connection.getLastUsed() > idleTimeout
+                && totalConnections.get() > minSize;
+            if ((idleTooLong || isExpired(connection)) && idle.remove(connection)) {
+                discard(connection);
+            }
+        }
+        try {
+            while (!closed && totalConnections.get() < minSize) {
+                PooledConnection connection = tryCreate();
+                if (connection == null) {
+                    break;
+                }
+                idle.offerLast(connection);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not fill the connection pool to its minimum size", e);
+        }
+    }
+}
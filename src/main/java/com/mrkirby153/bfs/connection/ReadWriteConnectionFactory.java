@@ -0,0 +1,194 @@
+package com.mrkirby153.bfs.connection;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ConnectionFactory} that sends reads to a set of replicas and writes to the primary.
+ * <br>
+ * After a write, reads on the thread that wrote are kept on the primary for the
+ * {@link #stickyWindow} so that it can read back its own writes before they have been replicated.
+ * Reads on other threads keep going to the replicas.
+ */
+@Slf4j
+public class ReadWriteConnectionFactory implements ConnectionFactory {
+
+    /**
+     * The factory for the primary database
+     */
+    @Getter
+    private final ConnectionFactory primary;
+
+    /**
+     * The replicas that reads are balanced across
+     */
+    private final List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * The strategy used to pick a replica
+     */
+    @Getter
+    private final Strategy strategy;
+
+    /**
+     * The amount of time (in ms) after a write that reads on the same thread are sent to the
+     * primary. Set to 0 to always send reads to a replica
+     */
+    @Getter
+    @Setter
+    private long stickyWindow = TimeUnit.SECONDS.toMillis(1);
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * The time (in ms) each thread last requested a connection for a write
+     */
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
+
+    public ReadWriteConnectionFactory(ConnectionFactory primary, List<ConnectionFactory> replicas) {
+        this(primary, replicas, Strategy.ROUND_ROBIN);
+    }
+
+    public ReadWriteConnectionFactory(ConnectionFactory primary, List<ConnectionFactory> replicas,
+        Strategy strategy) {
+        this.primary = primary;
+        this.strategy = strategy;
+        replicas.forEach(r -> this.replicas.add(new Replica(r)));
+    }
+
+    @Override
+    public Connection getConnection() {
+        return getConnection(StatementType.WRITE);
+    }
+
+    @Override
+    public Connection getConnection(StatementType type) {
+        long[] threadLastWrite = lastWrite.get();
+        if (type == StatementType.WRITE) {
+            threadLastWrite[0] = System.currentTimeMillis();
+            return primary.getConnection(type);
+        }
+        if (replicas.isEmpty()
+            || System.currentTimeMillis() - threadLastWrite[0] < stickyWindow) {
+            return primary.getConnection(type);
+        }
+        Replica replica = selectReplica();
+        try {
+            return replica.getConnection();
+        } catch (RuntimeException e) {
+            log.warn("Could not get a connection from replica {}, falling back to the primary",
+                replica.factory, e);
+            return primary.getConnection(type);
+        }
+    }
+
+    @Override
+    public PoolStats getStats() {
+        return primary.getStats();
+    }
+
+    /**
+     * Gets the number of connections currently borrowed from each replica
+     *
+     * @return The outstanding connections, in the order the replicas were provided
+     */
+    public int[] getOutstandingConnections() {
+        int[] outstanding = new int[replicas.size()];
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = replicas.get(i).outstanding.get();
+        }
+        return outstanding;
+    }
+
+    private Replica selectReplica() {
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                // Start at a rotating offset so ties are spread across the replicas
+                int offset = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+                Replica best = null;
+                for (int i = 0; i < replicas.size(); i++) {
+                    Replica candidate = replicas.get((offset + i) % replicas.size());
+                    if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+                        best = candidate;
+                    }
+                }
+                return best;
+            case ROUND_ROBIN:
+            default:
+                return replicas
+                    .get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+        }
+    }
+
+    /**
+     * The strategies used to pick which replica to read from
+     */
+    public enum Strategy {
+        /**
+         * Cycle through the replicas in order
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Use the replica with the fewest connections currently borrowed
+         */
+        LEAST_OUTSTANDING
+    }
+
+    /**
+     * A replica and the number of connections currently borrowed from it
+     */
+    private static class Replica {
+
+        private final ConnectionFactory factory;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private Replica(ConnectionFactory factory) {
+            this.factory = factory;
+        }
+
+        private Connection getConnection() {
+            Connection connection = factory.getConnection(StatementType.READ);
+            outstanding.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class[]{Connection.class}, new TrackingHandler(connection));
+        }
+
+        /**
+         * Invocation handler that decrements the replica's outstanding count when closed
+         */
+        private class TrackingHandler implements InvocationHandler {
+
+            private final Connection connection;
+            private boolean closed = false;
+
+            private TrackingHandler(Connection connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close") && !closed) {
+                    closed = true;
+                    outstanding.decrementAndGet();
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
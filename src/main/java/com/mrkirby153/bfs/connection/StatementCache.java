@@ -0,0 +1,219 @@
+package com.mrkirby153.bfs.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of the prepared statements of a {@link PooledConnection}, keyed by
+ * their SQL.
+ * <br>
+ * Statements handed out by the cache are returned to it when they are closed. If a statement is
+ * still in use when the same SQL is prepared again, an uncached statement is prepared instead
+ */
+@Slf4j
+class StatementCache {
+
+    private final PooledConnectionFactory pool;
+    private final Connection connection;
+    private final int maxSize;
+
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    StatementCache(PooledConnectionFactory pool, Connection connection, int maxSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                pool.recordStatementEviction();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Prepares a statement, reusing a cached statement for the SQL if there is one
+     *
+     * @param owner             The connection handle the statement is prepared on
+     * @param sql               The SQL of the statement
+     * @param autoGeneratedKeys If generated keys should be returned
+     *
+     * @return The prepared statement
+     *
+     * @throws SQLException If the statement could not be prepared
+     */
+    synchronized PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys)
+        throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "#" + sql : sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && cached.current == null) {
+            pool.recordStatementHit();
+            return cached.borrow(owner);
+        }
+        pool.recordStatementMiss();
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // The cached statement is in use, don't replace it
+            return statement;
+        }
+        cached = new CachedStatement(statement);
+        statements.put(key, cached);
+        return cached.borrow(owner);
+    }
+
+    /**
+     * Releases all statements. Called when the connection is returned to the pool, in case a
+     * borrower did not close their statements
+     */
+    synchronized void releaseAll() {
+        for (Iterator<CachedStatement> it = statements.values().iterator(); it.hasNext(); ) {
+            CachedStatement cached = it.next();
+            if (cached.current != null && !cached.release()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of statements in the cache
+     *
+     * @return The number of statements
+     */
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private synchronized void release(CachedStatement cached, CachedStatement.Handle handle) {
+        if (cached.current != handle) {
+            // The statement was already released when its connection was returned
+            return;
+        }
+        if (!cached.release()) {
+            statements.values().remove(cached);
+        }
+    }
+
+    /**
+     * A statement in the cache
+     */
+    private class CachedStatement {
+
+        private final PreparedStatement statement;
+        private boolean evicted = false;
+
+        /**
+         * The handle the statement is currently borrowed by, or null if it is not in use
+         */
+        private Handle current;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private PreparedStatement borrow(Connection owner) {
+            current = new Handle(owner);
+            return (PreparedStatement) Proxy
+                .newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class}, current);
+        }
+
+        /**
+         * Returns the statement to the cache, resetting the state a borrower may have left on it
+         * so that the next borrower starts with a clean statement. Statements that cannot be
+         * reset are discarded
+         *
+         * @return True if the statement can be reused
+         */
+        private boolean release() {
+            current = null;
+            if (!evicted) {
+                try {
+                    statement.clearParameters();
+                    // A failed batch would otherwise be executed by the next borrower
+                    statement.clearBatch();
+                    statement.setMaxRows(0);
+                    statement.setFetchSize(0);
+                    return true;
+                } catch (SQLException e) {
+                    log.debug("Could not reset statement {}, discarding it", statement, e);
+                }
+            }
+            closeQuietly();
+            return false;
+        }
+
+        private void evict() {
+            evicted = true;
+            if (current == null) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Ignore, the statement is being discarded
+            }
+        }
+
+        /**
+         * Invocation handler that delegates to the cached statement until the handle is closed
+         */
+        private class Handle implements InvocationHandler {
+
+            private final Connection owner;
+            private boolean closed = false;
+
+            private Handle(Connection owner) {
+                this.owner = owner;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            StatementCache.this.release(CachedStatement.this, this);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || current != this || statement.isClosed();
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return statement.toString();
+                }
+                if (closed || current != this) {
+                    throw new SQLException("The statement has been closed");
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
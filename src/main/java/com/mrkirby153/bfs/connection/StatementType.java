@@ -0,0 +1,16 @@
+package com.mrkirby153.bfs.connection;
+
+/**
+ * The type of statement a connection is requested for
+ */
+public enum StatementType {
+    /**
+     * The connection will only be used to read data
+     */
+    READ,
+
+    /**
+     * The connection will be used to modify data
+     */
+    WRITE
+}
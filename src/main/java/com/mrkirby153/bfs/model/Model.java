@@ -10,11 +10,13 @@ import lombok.extern.slf4j.Slf4j;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -88,6 +90,84 @@ public class Model {
         return where(modelClass, col, "=", data);
     }
 
+    /**
+     * Inserts models in bulk, updating the existing rows of models whose primary key already
+     * exists
+     *
+     * @param models The models, all of the same class
+     *
+     * @return The number of affected rows reported by the database
+     *
+     * @see ModelQueryBuilder#upsertAsync(Collection)
+     */
+    public static <T extends Model> int upsertAll(Collection<T> models) {
+        try {
+            return upsertAllAsync(models).get();
+        } catch (InterruptedException e) {
+            // Ignored
+        } catch (ExecutionException e) {
+            log.error("Could not upsert {} models", models.size(), e);
+        }
+        return 0;
+    }
+
+    /**
+     * Inserts models in bulk async, updating the existing rows of models whose primary key already
+     * exists
+     *
+     * @param models The models, all of the same class
+     *
+     * @return A completable future completed with the number of affected rows
+     *
+     * @see ModelQueryBuilder#upsertAsync(Collection)
+     */
+    public static <T extends Model> CompletableFuture<Integer> upsertAllAsync(
+        Collection<T> models) {
+        if (models.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        Class<T> modelClass = (Class<T>) models.iterator().next().getClass();
+        return new ModelQueryBuilder<>(modelClass).upsertAsync(models);
+    }
+
+    /**
+     * Loads models in bulk by streaming them to the database
+     *
+     * @param models The models, all of the same class
+     *
+     * @return The number of loaded rows
+     *
+     * @see ModelQueryBuilder#loadAsync(Collection)
+     */
+    public static <T extends Model> int loadAll(Collection<T> models) {
+        try {
+            return loadAllAsync(models).get();
+        } catch (InterruptedException e) {
+            // Ignored
+        } catch (ExecutionException e) {
+            log.error("Could not load {} models", models.size(), e);
+        }
+        return 0;
+    }
+
+    /**
+     * Loads models in bulk async by streaming them to the database
+     *
+     * @param models The models, all of the same class
+     *
+     * @return A completable future completed with the number of loaded rows
+     *
+     * @see ModelQueryBuilder#loadAsync(Collection)
+     */
+    public static <T extends Model> CompletableFuture<Integer> loadAllAsync(
+        Collection<T> models) {
+        if (models.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        Class<T> modelClass = (Class<T>) models.iterator().next().getClass();
+        return new ModelQueryBuilder<>(modelClass).loadAsync(models);
+    }
+
     /**
      * Discover columns on the class
      */
@@ -333,6 +413,17 @@ public class Model {
         return exists;
     }
 
+    /**
+     * Gets the field holding a column's data
+     *
+     * @param column The column
+     *
+     * @return The field, or null if the column does not exist on the model
+     */
+    Field getColumnField(String column) {
+        return this.columns.get(column);
+    }
+
     public Object getData(String column) {
         if (!this.columns.containsKey(column)) {
             throw new IllegalArgumentException(
@@ -3,8 +3,14 @@ package com.mrkirby153.bfs.model;
 import com.mrkirby153.bfs.Pair;
 import com.mrkirby153.bfs.model.annotations.AutoIncrementing;
 import com.mrkirby153.bfs.model.enhancers.EnhancerUtils;
+import com.mrkirby153.bfs.model.enhancers.TimestampEnhancer;
 import com.mrkirby153.bfs.query.DbRow;
+import com.mrkirby153.bfs.query.InsertProgressListener;
+import com.mrkirby153.bfs.query.Page;
+import com.mrkirby153.bfs.query.PreparedQuery;
 import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.QueryPriority;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
 import com.mrkirby153.bfs.query.elements.JoinElement.Type;
 import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
 import com.mrkirby153.bfs.query.grammar.Grammar;
@@ -13,13 +19,19 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
@@ -49,12 +61,9 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         List<DbRow> rows = this.query();
         List<T> results = new ArrayList<>();
         rows.forEach(row -> {
-            try {
-                T instance = this.modelClass.getConstructor().newInstance();
-                instance.hydrate(row);
+            T instance = hydrate(row);
+            if (instance != null) {
                 results.add(instance);
-            } catch (InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
-                log.error("Could not instantiate class {}", modelClass, e);
             }
         });
         return results;
@@ -66,9 +75,85 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         if (rows.size() == 0) {
             return null;
         }
+        return hydrate(rows.get(0));
+    }
+
+    /**
+     * Compiles the query into an immutable template returning models. Enhancers are applied to
+     * the query when it is prepared
+     *
+     * @return The prepared query
+     *
+     * @see QueryBuilder#prepare()
+     */
+    public PreparedQuery<T> prepareModels() {
+        enhanceQuery();
+        return prepare(this::hydrate);
+    }
+
+    @Override
+    public PreparedQuery<DbRow> prepare() {
+        enhanceQuery();
+        return super.prepare();
+    }
+
+    /**
+     * Reads a page of models with keyset pagination
+     *
+     * @param size The number of models in the page
+     *
+     * @return The page
+     *
+     * @see QueryBuilder#page(int)
+     */
+    public Page<T> pageModels(int size) {
+        try {
+            return pageModelsAsync(size).get();
+        } catch (InterruptedException e) {
+            // Ignore
+        } catch (ExecutionException e) {
+            log.error("Could not execute query", e);
+        }
+        return new Page<>(new ArrayList<>(), null);
+    }
+
+    /**
+     * Reads a page of models with keyset pagination async
+     *
+     * @param size The number of models in the page
+     *
+     * @return A completable future completed with the page
+     *
+     * @see QueryBuilder#page(int)
+     */
+    public CompletableFuture<Page<T>> pageModelsAsync(int size) {
+        return pageAsync(size, this::hydrate);
+    }
+
+    /**
+     * Executes the query and hydrates its models one at a time as the returned stream is
+     * consumed. The stream should be closed with try-with-resources
+     *
+     * @return The stream of models
+     *
+     * @see QueryBuilder#cursor()
+     */
+    public Stream<T> cursorModels() {
+        enhanceQuery();
+        return cursor(this::hydrate);
+    }
+
+    /**
+     * Creates an instance of the model from a row
+     *
+     * @param row The row
+     *
+     * @return The model, or null if it could not be instantiated
+     */
+    private T hydrate(DbRow row) {
         try {
             T instance = this.modelClass.getConstructor().newInstance();
-            instance.hydrate(rows.get(0));
+            instance.hydrate(row);
             return instance;
         } catch (InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
             log.error("Could not instantiate class {}", modelClass, e);
@@ -76,6 +161,12 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         return null;
     }
 
+    private void enhanceQuery() {
+        enhance();
+        EnhancerUtils.withoutEnhancers(modelClass, enhancersToSkip.toArray(new String[0]))
+            .forEach(enhancer -> enhancer.onQuery(this));
+    }
+
     private void enhance() {
         if (enhanced) {
             return;
@@ -286,22 +377,110 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         return this;
     }
 
+    @Override
+    public ModelQueryBuilder<T> timeout(Duration timeout) {
+        super.timeout(timeout);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> priority(QueryPriority priority) {
+        super.priority(priority);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> generatedKey(String column) {
+        super.generatedKey(column);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> temporaryTableThreshold(int threshold) {
+        super.temporaryTableThreshold(threshold);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> insertParallelism(int connections) {
+        super.insertParallelism(connections);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> onInsertProgress(InsertProgressListener listener) {
+        super.onInsertProgress(listener);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> seekAfter(String cursor) {
+        super.seekAfter(cursor);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> selectAggregate(AggregateElement.Type type, String column, String alias) {
+        super.selectAggregate(type, column, alias);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> groupBy(String... columns) {
+        super.groupBy(columns);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> having(String column, String operator, Object value) {
+        super.having(column, operator, value);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> orHaving(String column, String operator, Object value) {
+        super.orHaving(column, operator, value);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> having(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        super.having(type, column, operator, value);
+        return this;
+    }
+
+    @Override
+    public ModelQueryBuilder<T> orHaving(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        super.orHaving(type, column, operator, value);
+        return this;
+    }
+
     @Override
     public List<DbRow> query() {
-        enhance();
-        EnhancerUtils.withoutEnhancers(modelClass, enhancersToSkip.toArray(new String[0]))
-            .forEach(enhancer -> enhancer.onQuery(this));
+        enhanceQuery();
         return super.query();
     }
 
     @Override
     public CompletableFuture<List<DbRow>> queryAsync() {
-        enhance();
-        EnhancerUtils.withoutEnhancers(modelClass, enhancersToSkip.toArray(new String[0]))
-            .forEach(enhancer -> enhancer.onQuery(this));
+        enhanceQuery();
         return super.queryAsync();
     }
 
+    @Override
+    public Stream<DbRow> cursor() {
+        enhanceQuery();
+        return super.cursor();
+    }
+
+    @Override
+    protected CompletableFuture<Object> aggregateAsync(AggregateElement aggregate) {
+        enhanceQuery();
+        return super.aggregateAsync(aggregate);
+    }
+
     @Override
     public boolean delete() {
         enhance();
@@ -340,6 +519,7 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         List<Pair<String, Object>> data = model.getDirtyColumns().stream()
             .map(col -> new Pair<>(col, model.getData(col))).collect(Collectors.toList());
         if (modelClass.isAnnotationPresent(AutoIncrementing.class)) {
+            generatedKey(model.getPrimaryKey());
             return insertWithGenerated(data).thenApply(result -> {
                 log.trace("Setting auto generated result {}", result);
                 model.setColumn(model.getPrimaryKey(), result);
@@ -354,6 +534,119 @@ public class ModelQueryBuilder<T extends Model> extends QueryBuilder {
         }
     }
 
+    /**
+     * Inserts models in bulk, updating the existing rows of models whose primary key already
+     * exists. Every column except the primary key and the created at timestamps is updated
+     *
+     * @param models The models
+     *
+     * @return A completable future completed with the number of affected rows
+     */
+    public CompletableFuture<Integer> upsertAsync(Collection<T> models) {
+        if (models.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        T sample = models.iterator().next();
+        List<String> uniqueBy = Collections.singletonList(sample.getPrimaryKey());
+        List<String> updateColumns = new ArrayList<>();
+        for (String column : sample.getColumnData().keySet()) {
+            if (!uniqueBy.contains(column) && !sample.getColumnField(column)
+                .isAnnotationPresent(TimestampEnhancer.CreatedAt.class)) {
+                updateColumns.add(column);
+            }
+        }
+        return upsertAsync(models, uniqueBy, updateColumns);
+    }
+
+    /**
+     * Inserts models in bulk, updating the existing row instead when a model conflicts with it on
+     * a unique key. The primary key of auto incrementing models is only inserted when it is part
+     * of the unique key, and only models with a primary key are marked as existing afterwards
+     *
+     * @param models        The models
+     * @param uniqueBy      The columns of the unique key models conflict on
+     * @param updateColumns The columns updated on existing rows, or none to leave them unchanged
+     *
+     * @return A completable future completed with the number of affected rows
+     */
+    public CompletableFuture<Integer> upsertAsync(Collection<T> models, List<String> uniqueBy,
+        List<String> updateColumns) {
+        if (models.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Enhancer> enhancers = EnhancerUtils
+            .withoutEnhancers(modelClass, enhancersToSkip.toArray(new String[0]));
+        boolean generated = modelClass.isAnnotationPresent(AutoIncrementing.class);
+        List<Map<String, Object>> rows = new ArrayList<>(models.size());
+        for (T model : models) {
+            enhancers.forEach(enhancer -> enhancer.onInsert(model, this));
+            Map<String, Object> data = model.getColumnData();
+            if (generated && !uniqueBy.contains(model.getPrimaryKey())) {
+                data.remove(model.getPrimaryKey());
+            }
+            rows.add(data);
+        }
+        return upsertBulk(rows, uniqueBy, updateColumns).thenApply(affected -> {
+            for (T model : models) {
+                if (model.getData(model.getPrimaryKey()) != null) {
+                    model.setExists(true);
+                    model.updateModelState();
+                }
+            }
+            return affected;
+        });
+    }
+
+    /**
+     * Loads models in bulk by streaming them to the database. The primary key of auto incrementing
+     * models is generated by the database, and the loaded models are not marked as existing
+     *
+     * @param models The models
+     *
+     * @return A completable future completed with the number of loaded rows
+     *
+     * @see QueryBuilder#loadBulk(Iterator)
+     */
+    public CompletableFuture<Integer> loadAsync(Collection<T> models) {
+        if (models.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return loadAsync(models.iterator());
+    }
+
+    /**
+     * Loads models in bulk as they are read from an iterator. Each model is converted to a row
+     * when it is streamed to the database
+     *
+     * @param models The models
+     *
+     * @return A completable future completed with the number of loaded rows
+     *
+     * @see #loadAsync(Collection)
+     */
+    public CompletableFuture<Integer> loadAsync(Iterator<T> models) {
+        List<Enhancer> enhancers = EnhancerUtils
+            .withoutEnhancers(modelClass, enhancersToSkip.toArray(new String[0]));
+        boolean generated = modelClass.isAnnotationPresent(AutoIncrementing.class);
+        return loadBulk(new Iterator<Map<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+                return models.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                T model = models.next();
+                enhancers.forEach(enhancer -> enhancer.onInsert(model, ModelQueryBuilder.this));
+                Map<String, Object> data = model.getColumnData();
+                if (generated) {
+                    data.remove(model.getPrimaryKey());
+                }
+                return data;
+            }
+        });
+    }
+
     public void create() {
         try {
             createAsync().get();
@@ -1,11 +1,15 @@
 package com.mrkirby153.bfs.model;
 
 import com.mrkirby153.bfs.Pair;
+import com.mrkirby153.bfs.query.InsertProgressListener;
 import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.QueryPriority;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
 import com.mrkirby153.bfs.query.elements.JoinElement.Type;
 import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
 import com.mrkirby153.bfs.query.grammar.Grammar;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -217,6 +221,86 @@ public class SoftDeletingModelQueryBuilder<T extends SoftDeletingModel> extends
         return this;
     }
 
+    @Override
+    public SoftDeletingModelQueryBuilder<T> timeout(Duration timeout) {
+        super.timeout(timeout);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> priority(QueryPriority priority) {
+        super.priority(priority);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> generatedKey(String column) {
+        super.generatedKey(column);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> temporaryTableThreshold(int threshold) {
+        super.temporaryTableThreshold(threshold);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> insertParallelism(int connections) {
+        super.insertParallelism(connections);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> onInsertProgress(InsertProgressListener listener) {
+        super.onInsertProgress(listener);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> seekAfter(String cursor) {
+        super.seekAfter(cursor);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> selectAggregate(AggregateElement.Type type, String column, String alias) {
+        super.selectAggregate(type, column, alias);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> groupBy(String... columns) {
+        super.groupBy(columns);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> having(String column, String operator, Object value) {
+        super.having(column, operator, value);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> orHaving(String column, String operator, Object value) {
+        super.orHaving(column, operator, value);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> having(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        super.having(type, column, operator, value);
+        return this;
+    }
+
+    @Override
+    public SoftDeletingModelQueryBuilder<T> orHaving(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        super.orHaving(type, column, operator, value);
+        return this;
+    }
+
     /**
      * Bulk restores models
      */
@@ -0,0 +1,411 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Controls the admission of async queries into the query executor.
+ * <br>
+ * At most {@link #maxConcurrent} queries are handed to the executor at once, the rest wait in a
+ * queue bounded to {@link #maxQueued} queries. What happens to queries submitted while the queue
+ * is full is decided by the {@link OverflowPolicy}.
+ * <br>
+ * Queries wait in a separate lane for each {@link QueryPriority}. When a thread frees up, the next
+ * query is taken from the lanes in proportion to their weights (smooth weighted round robin), and
+ * each lane can be limited to a number of concurrently running queries so that low priority work
+ * cannot occupy every thread.
+ */
+@Slf4j
+public class AdmissionController {
+
+    /**
+     * The executor running the queries
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The maximum number of queries running at once
+     */
+    @Getter
+    private final int maxConcurrent;
+
+    /**
+     * The maximum number of queries waiting to run
+     */
+    @Getter
+    private final int maxQueued;
+
+    /**
+     * The policy applied when a query is submitted while the queue is full
+     */
+    @Getter
+    private final OverflowPolicy policy;
+
+    /**
+     * The maximum amount of time (in ms) to block for with {@link OverflowPolicy#BLOCK}
+     */
+    @Getter
+    private final long blockTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final EnumMap<QueryPriority, Lane> lanes = new EnumMap<>(QueryPriority.class);
+    private int running = 0;
+    private int queued = 0;
+    private int peakQueued = 0;
+    private boolean shutdown = false;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    AdmissionController(ExecutorService executor, int maxConcurrent, int maxQueued,
+        OverflowPolicy policy, long blockTimeout, Map<QueryPriority, Integer> weights,
+        Map<QueryPriority, Integer> laneLimits) {
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+        for (QueryPriority priority : QueryPriority.values()) {
+            lanes.put(priority, new Lane(priority,
+                weights.getOrDefault(priority, priority.getDefaultWeight()),
+                Math.min(maxConcurrent, laneLimits.getOrDefault(priority, maxConcurrent))));
+        }
+    }
+
+    /**
+     * Submits a query to run
+     *
+     * @param supplier The query
+     * @param priority The priority of the query. When work is dropped, queries with a lower
+     *                 priority are dropped first
+     *
+     * @return A future completed with the query's result, or completed exceptionally with a
+     * {@link QueryRejectedException} if the query was not admitted
+     */
+    public <T> QueryFuture<T> submit(Supplier<T> supplier, QueryPriority priority) {
+        Lane lane = lanes.get(priority);
+        Task<T> task = new Task<>(supplier, lane);
+        Task<?> victim = null;
+        String rejection = null;
+        List<Task<?>> ready = Collections.emptyList();
+        lock.lock();
+        try {
+            if (shutdown) {
+                rejection = "the executor has been shut down";
+            } else if (hasCapacity(lane)) {
+                enqueue(task);
+            } else {
+                switch (policy) {
+                    case FAIL_FAST:
+                        rejection = "the query queue is full";
+                        break;
+                    case BLOCK:
+                        if (awaitCapacity(lane)) {
+                            enqueue(task);
+                        } else {
+                            rejection = String
+                                .format("the query queue was full for %d ms", blockTimeout);
+                        }
+                        break;
+                    case DROP_LOWEST_PRIORITY:
+                        Lane lowest = lowestQueued();
+                        if (lowest.priority.isHigherThan(priority)) {
+                            rejection = "the query queue is full of higher priority work";
+                        } else {
+                            victim = lowest.queue.pollFirst();
+                            queued--;
+                            // Dropped work is counted as dropped instead of admitted
+                            lowest.admitted--;
+                            enqueue(task);
+                        }
+                        break;
+                }
+            }
+            if (rejection == null) {
+                lane.admitted++;
+                ready = pollReady();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (rejection != null) {
+            rejected.increment();
+            log.debug("Rejecting query: {}", rejection);
+            task.future.completeExceptionally(
+                new QueryRejectedException("The query was rejected because " + rejection));
+            return task.future;
+        }
+        admitted.increment();
+        if (victim != null) {
+            admitted.decrement();
+            dropped.increment();
+            victim.future.completeExceptionally(new QueryRejectedException(
+                "The query was dropped to make room for higher priority work"));
+        }
+        ready.forEach(this::dispatch);
+        return task.future;
+    }
+
+    /**
+     * Gets a snapshot of the controller's statistics
+     *
+     * @return The statistics
+     */
+    public AdmissionStats getStats() {
+        lock.lock();
+        try {
+            Map<QueryPriority, LaneStats> laneStats = new EnumMap<>(QueryPriority.class);
+            lanes.forEach((priority, lane) -> laneStats.put(priority,
+                new LaneStats(priority, lane.running, lane.queue.size(), lane.maxConcurrent,
+                    lane.weight, lane.admitted)));
+            return new AdmissionStats(running, queued, peakQueued, maxConcurrent, maxQueued,
+                admitted.sum(), rejected.sum(), dropped.sum(), laneStats);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting queries. Queued queries are still run, after which the executor is shut
+     * down
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            if (running == 0 && queued == 0) {
+                executor.shutdown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Task<?> task) {
+        task.lane.queue.addLast(task);
+        queued++;
+        peakQueued = Math.max(peakQueued, queued);
+    }
+
+    /**
+     * Checks if a query submitted to the lane can run or be queued. Must be called while holding
+     * the lock
+     *
+     * @param lane The lane
+     *
+     * @return True if there is room for the query
+     */
+    private boolean hasCapacity(Lane lane) {
+        return queued < maxQueued || (running < maxConcurrent && lane.canRun());
+    }
+
+    /**
+     * Waits for a slot to run or queue a query. Must be called while holding the lock
+     *
+     * @param lane The lane the query will run in
+     *
+     * @return True if there is room for the query, false if the wait timed out
+     */
+    private boolean awaitCapacity(Lane lane) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        try {
+            while (!hasCapacity(lane)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Finds the lowest priority lane with queued queries. Must be called while holding the lock
+     *
+     * @return The lane
+     */
+    private Lane lowestQueued() {
+        Lane lowest = null;
+        for (Lane lane : lanes.values()) {
+            if (!lane.queue.isEmpty()) {
+                lowest = lane;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Takes queued queries off their lanes for as long as there are threads free to run them. Must
+     * be called while holding the lock
+     *
+     * @return The queries to dispatch
+     */
+    private List<Task<?>> pollReady() {
+        List<Task<?>> ready = new ArrayList<>();
+        while (running < maxConcurrent) {
+            Lane next = nextLane();
+            if (next == null) {
+                break;
+            }
+            Task<?> task = next.queue.pollFirst();
+            queued--;
+            running++;
+            next.running++;
+            ready.add(task);
+        }
+        if (!ready.isEmpty()) {
+            notFull.signalAll();
+        }
+        return ready;
+    }
+
+    /**
+     * Picks the lane to run the next query from using smooth weighted round robin across the lanes
+     * that have queued queries and are below their concurrency limit. Must be called while
+     * holding the lock
+     *
+     * @return The lane, or null if no lane can run a query
+     */
+    private Lane nextLane() {
+        Lane best = null;
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.queue.isEmpty() || !lane.canRun()) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            total += lane.weight;
+            if (best == null || lane.currentWeight > best.currentWeight) {
+                best = lane;
+            }
+        }
+        if (best != null) {
+            best.currentWeight -= total;
+        }
+        return best;
+    }
+
+    private void dispatch(Task<?> task) {
+        try {
+            executor.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+            onComplete(task);
+        }
+    }
+
+    private void run(Task<?> task) {
+        try {
+            task.run();
+        } finally {
+            onComplete(task);
+        }
+    }
+
+    /**
+     * Starts the next queued queries, if any, once a query has completed
+     *
+     * @param task The completed query
+     */
+    private void onComplete(Task<?> task) {
+        List<Task<?>> ready;
+        lock.lock();
+        try {
+            running--;
+            task.lane.running--;
+            ready = pollReady();
+            if (shutdown && running == 0 && queued == 0) {
+                executor.shutdown();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        ready.forEach(this::dispatch);
+    }
+
+    /**
+     * The policies applied to queries submitted while the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Reject the query with a {@link QueryRejectedException}
+         */
+        FAIL_FAST,
+
+        /**
+         * Block the submitting thread until there is room in the queue, rejecting the query if the
+         * block timeout passes first
+         */
+        BLOCK,
+
+        /**
+         * Drop the oldest queued query with the lowest priority to make room, as long as its
+         * priority is not higher than the submitted query's. Otherwise the submitted query is
+         * rejected
+         */
+        DROP_LOWEST_PRIORITY
+    }
+
+    /**
+     * The queries of one priority waiting to run
+     */
+    private static class Lane {
+
+        private final QueryPriority priority;
+        private final int weight;
+        private final int maxConcurrent;
+        private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+        private int running = 0;
+        private int currentWeight = 0;
+        private long admitted = 0;
+
+        private Lane(QueryPriority priority, int weight, int maxConcurrent) {
+            this.priority = priority;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        private boolean canRun() {
+            return running < maxConcurrent;
+        }
+    }
+
+    /**
+     * A query waiting to run
+     */
+    private static class Task<T> {
+
+        private final Supplier<T> supplier;
+        private final Lane lane;
+        private final QueryFuture<T> future = new QueryFuture<>();
+
+        private Task(Supplier<T> supplier, Lane lane) {
+            this.supplier = supplier;
+            this.lane = lane;
+        }
+
+        private void run() {
+            future.run(supplier);
+        }
+    }
+}
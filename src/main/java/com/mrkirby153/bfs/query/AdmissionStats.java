@@ -0,0 +1,57 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * A point in time snapshot of an {@link AdmissionController}'s statistics
+ */
+@Data
+public class AdmissionStats {
+
+    /**
+     * The number of queries currently running
+     */
+    private final int running;
+
+    /**
+     * The number of queries currently waiting to run
+     */
+    private final int queued;
+
+    /**
+     * The largest number of queries that have been waiting at once
+     */
+    private final int peakQueued;
+
+    /**
+     * The maximum number of queries that can run at once
+     */
+    private final int maxConcurrent;
+
+    /**
+     * The maximum number of queries that can wait to run
+     */
+    private final int maxQueued;
+
+    /**
+     * The total number of queries admitted and not dropped
+     */
+    private final long admitted;
+
+    /**
+     * The total number of queries rejected when they were submitted
+     */
+    private final long rejected;
+
+    /**
+     * The total number of queued queries dropped to make room for other queries
+     */
+    private final long dropped;
+
+    /**
+     * The statistics of each priority lane
+     */
+    private final Map<QueryPriority, LaneStats> lanes;
+}
@@ -0,0 +1,133 @@
+package com.mrkirby153.bfs.query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The values bound to a query, grouped into sections. Values are bound section by section in the
+ * order the sections appear in SQL, and in the order they were added within a section
+ */
+public class Bindings {
+
+    private static final Object[] EMPTY = new Object[0];
+    private static final Section[] SECTIONS = Section.values();
+
+    private final Object[][] values = new Object[SECTIONS.length][];
+    private final int[] sizes = new int[SECTIONS.length];
+
+    public Bindings() {
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Adds a value to a section
+     *
+     * @param section The section
+     * @param value   The value
+     */
+    public void add(Section section, Object value) {
+        int s = section.ordinal();
+        Object[] sectionValues = values[s];
+        if (sizes[s] == sectionValues.length) {
+            sectionValues = values[s] = Arrays
+                .copyOf(sectionValues, Math.max(4, sectionValues.length * 2));
+        }
+        sectionValues[sizes[s]++] = value;
+    }
+
+    /**
+     * Adds every value of another set of bindings to a section, in the order they would be bound
+     *
+     * @param section The section
+     * @param other   The bindings to add
+     */
+    public void addAll(Section section, Bindings other) {
+        for (int s = 0; s < SECTIONS.length; s++) {
+            for (int i = 0; i < other.sizes[s]; i++) {
+                add(section, other.values[s][i]);
+            }
+        }
+    }
+
+    /**
+     * Removes every value from a section
+     *
+     * @param section The section
+     */
+    public void clear(Section section) {
+        int s = section.ordinal();
+        Arrays.fill(values[s], 0, sizes[s], null);
+        sizes[s] = 0;
+    }
+
+    /**
+     * Gets the number of values in a section
+     *
+     * @param section The section
+     *
+     * @return The number of values
+     */
+    public int size(Section section) {
+        return sizes[section.ordinal()];
+    }
+
+    /**
+     * Gets the total number of values
+     *
+     * @return The number of values
+     */
+    public int size() {
+        int size = 0;
+        for (int s : sizes) {
+            size += s;
+        }
+        return size;
+    }
+
+    /**
+     * Gets every value in the order they are bound
+     *
+     * @return The values
+     */
+    public Object[] toArray() {
+        Object[] all = new Object[size()];
+        int pos = 0;
+        for (int s = 0; s < SECTIONS.length; s++) {
+            System.arraycopy(values[s], 0, all, pos, sizes[s]);
+            pos += sizes[s];
+        }
+        return all;
+    }
+
+    /**
+     * Binds every value to a statement, starting at the first parameter
+     *
+     * @param statement The statement
+     *
+     * @throws SQLException If a value could not be bound
+     */
+    public void bind(PreparedStatement statement) throws SQLException {
+        int index = 1;
+        for (int s = 0; s < SECTIONS.length; s++) {
+            Object[] sectionValues = values[s];
+            for (int i = 0; i < sizes[s]; i++) {
+                ParameterBinder.bind(statement, index++, sectionValues[i]);
+            }
+        }
+    }
+
+    /**
+     * The sections of a query that values are bound in, in the order they appear in SQL
+     */
+    public enum Section {
+        INSERT,
+        UPDATE,
+        WHERE,
+        /**
+         * The values of a keyset seek, which is compiled after every other where clause
+         */
+        SEEK,
+        HAVING
+    }
+}
@@ -0,0 +1,264 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.connection.StatementType;
+import com.mrkirby153.bfs.query.grammar.Grammar;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bulk insert split into chunks small enough for a single statement. Chunks of the same size
+ * share a statement and are sent to the database as JDBC batches
+ */
+@Slf4j
+class BulkInsert {
+
+    /**
+     * The most values bound to a single statement. MySQL and PostgreSQL both reject statements
+     * with more placeholders
+     */
+    static final int MAX_BOUND_VALUES = 65535;
+
+    /**
+     * The most chunks sent in a single batch
+     */
+    private static final int CHUNKS_PER_BATCH = 8;
+
+    private final QueryBuilder builder;
+    private final List<Map<String, Object>> rows;
+    private final String[] columns;
+
+    /**
+     * If the keys generated for the inserted rows are returned
+     */
+    private final boolean generated;
+
+    /**
+     * The listener notified of inserted chunks, or null
+     */
+    private final InsertProgressListener listener;
+
+    /**
+     * The number of rows in every chunk but the last
+     */
+    private final int chunkSize;
+
+    private final int chunkCount;
+
+    /**
+     * The keys generated for the rows of each chunk
+     */
+    private final long[][] keys;
+
+    private final AtomicLong inserted = new AtomicLong();
+
+    BulkInsert(QueryBuilder builder, List<Map<String, Object>> rows, String[] columns,
+        boolean generated, InsertProgressListener listener) {
+        this.builder = builder;
+        this.rows = rows;
+        this.columns = columns;
+        this.generated = generated;
+        this.listener = listener;
+        this.chunkSize = chunkSize(rows, columns);
+        this.chunkCount = (rows.size() + chunkSize - 1) / chunkSize;
+        this.keys = new long[chunkCount][];
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Gets the keys generated for the inserted rows
+     *
+     * @return The keys, in the order the rows were given
+     */
+    List<Long> getKeys() {
+        List<Long> all = new ArrayList<>(rows.size());
+        for (long[] chunk : keys) {
+            if (chunk != null) {
+                for (long key : chunk) {
+                    all.add(key);
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Inserts a range of chunks on a single connection. Unless the builder is in a transaction,
+     * the chunks are inserted in a transaction of their own
+     *
+     * @param first The index of the first chunk
+     * @param last  The index after the last chunk
+     *
+     * @return The number of inserted rows
+     */
+    int run(int first, int last) {
+        try (Connection con = QueryBuilder
+            .openConnection(builder.getTransaction(), builder.getConnectionFactory(),
+                StatementType.WRITE)) {
+            boolean commit = con.getAutoCommit() && last - first > 1;
+            if (commit) {
+                con.setAutoCommit(false);
+            }
+            try {
+                int count = insert(con, first, last);
+                if (commit) {
+                    con.commit();
+                }
+                return count;
+            } catch (SQLException | RuntimeException e) {
+                if (commit) {
+                    con.rollback();
+                }
+                throw e;
+            } finally {
+                if (commit) {
+                    con.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error when inserting bulk", e);
+            throw new CompletionException(e);
+        }
+    }
+
+    private int insert(Connection con, int first, int last) throws SQLException {
+        Grammar grammar = builder.getGrammar();
+        Duration timeout =
+            builder.getTimeout() != null ? builder.getTimeout() : QueryBuilder.getDefaultTimeout();
+        int count = 0;
+        int chunk = first;
+        while (chunk < last) {
+            int size = rowsIn(chunk);
+            String returning = generated ? grammar
+                .compileInsertReturning(builder, size, builder.getGeneratedKey(), columns) : null;
+            if (returning != null) {
+                // Each insert returns its keys as a result set, which cannot be batched
+                try (PreparedStatement ps = con.prepareStatement(returning);
+                    QueryFuture.Registration registration = QueryBuilder.track(ps, timeout)) {
+                    bind(ps, chunk);
+                    log.trace("Executing BULK INSERT (returning {}): {}",
+                        builder.getGeneratedKey(), ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        keys[chunk] = readKeys(rs, size);
+                    }
+                }
+                count += inserted(chunk++);
+                continue;
+            }
+            String sql = grammar.compileInsertMany(builder, size, columns);
+            try (PreparedStatement ps = con.prepareStatement(sql,
+                generated ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+                QueryFuture.Registration registration = QueryBuilder.track(ps, timeout)) {
+                int batchStart = chunk;
+                while (chunk < last && rowsIn(chunk) == size
+                    && chunk - batchStart < CHUNKS_PER_BATCH) {
+                    bind(ps, chunk++);
+                    ps.addBatch();
+                }
+                log.trace("Executing BULK INSERT of {} chunks (with generated? {}): {}",
+                    chunk - batchStart, generated, sql);
+                ps.executeBatch();
+                if (generated) {
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (int i = batchStart; i < chunk; i++) {
+                            keys[i] = readKeys(rs, rowsIn(i));
+                        }
+                    }
+                }
+                for (int i = batchStart; i < chunk; i++) {
+                    count += inserted(i);
+                }
+            }
+        }
+        return count;
+    }
+
+    private void bind(PreparedStatement ps, int chunk) throws SQLException {
+        int index = 1;
+        int start = chunk * chunkSize;
+        for (Map<String, Object> row : rows.subList(start, start + rowsIn(chunk))) {
+            for (String column : columns) {
+                ParameterBinder.bind(ps, index++, row.get(column));
+            }
+        }
+    }
+
+    private long[] readKeys(ResultSet rs, int count) throws SQLException {
+        long[] chunkKeys = new long[count];
+        int read = 0;
+        while (read < count && rs.next()) {
+            chunkKeys[read++] = rs.getLong(1);
+        }
+        return read == count ? chunkKeys : Arrays.copyOf(chunkKeys, read);
+    }
+
+    private int inserted(int chunk) {
+        int size = rowsIn(chunk);
+        long total = inserted.addAndGet(size);
+        if (listener != null) {
+            listener.onChunkInserted(chunk, chunkCount, total, rows.size());
+        }
+        return size;
+    }
+
+    private int rowsIn(int chunk) {
+        return Math.min(chunkSize, rows.size() - chunk * chunkSize);
+    }
+
+    /**
+     * Computes the number of rows inserted by each statement, so that statements stay below the
+     * placeholder limit and the estimated size of the largest row stays below
+     * {@link QueryBuilder#getMaxBulkInsertBytes()}
+     *
+     * @param rows    The rows
+     * @param columns The columns of each row
+     *
+     * @return The number of rows in each statement
+     */
+    static int chunkSize(List<Map<String, Object>> rows, String[] columns) {
+        long largest = 1;
+        for (Map<String, Object> row : rows) {
+            // The parentheses and separators of the row
+            long bytes = 4;
+            for (String column : columns) {
+                bytes += estimateBytes(row.get(column)) + 2;
+            }
+            largest = Math.max(largest, bytes);
+        }
+        long byBytes = QueryBuilder.getMaxBulkInsertBytes() / largest;
+        return (int) Math.max(1, Math.min(MAX_BOUND_VALUES / columns.length, byBytes));
+    }
+
+    /**
+     * Estimates the number of bytes a value takes up in a statement sent to the database. Values
+     * of prepared statements emulated by the driver are escaped into the SQL, so the estimate
+     * leaves room for escaping and multi-byte characters
+     *
+     * @param value The value
+     *
+     * @return The estimated number of bytes
+     */
+    private static long estimateBytes(Object value) {
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() * 3L + 2;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length * 2L + 3;
+        }
+        return 24;
+    }
+}
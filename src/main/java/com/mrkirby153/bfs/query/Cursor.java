@@ -0,0 +1,101 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.event.QueryEvent;
+import com.mrkirby153.bfs.query.event.QueryEventManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the rows of a query one at a time from an open result set. The statement and the
+ * connection it runs on are released once every row was read or the cursor is closed
+ */
+@Slf4j
+class Cursor implements Iterator<DbRow>, AutoCloseable {
+
+    private final QueryBuilder builder;
+    private final Connection connection;
+    private final TemporaryTable.Scope tables;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+
+    /**
+     * If the cursor disabled auto commit on the connection, and must commit when it is closed
+     */
+    private final boolean commit;
+
+    private final RowSchema schema;
+
+    private DbRow next = null;
+    private boolean closed = false;
+
+    Cursor(QueryBuilder builder, Connection connection, TemporaryTable.Scope tables,
+        PreparedStatement statement, ResultSet resultSet, boolean commit) throws SQLException {
+        this.builder = builder;
+        this.connection = connection;
+        this.tables = tables;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.commit = commit;
+        this.schema = RowSchema.of(resultSet.getMetaData());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            if (resultSet.next()) {
+                next = schema.read(resultSet);
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("Could not read the next row", e);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public DbRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DbRow row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = null;
+        // Everything is released even if releasing something before it fails
+        try (Connection con = connection;
+            TemporaryTable.Scope scope = tables;
+            PreparedStatement ps = statement;
+            ResultSet rs = resultSet) {
+            if (commit) {
+                rs.close();
+                con.commit();
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("Could not close the cursor", e);
+        }
+        QueryEventManager.callEvents(QueryEvent.Type.POST_GET, builder);
+    }
+}
@@ -1,5 +1,6 @@
 package com.mrkirby153.bfs.query;
 
+import com.mrkirby153.bfs.connection.StatementType;
 import lombok.extern.slf4j.Slf4j;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
@@ -193,14 +194,17 @@ public class DB {
      * @return The number of rows affected
      */
     public static int executeUpdate(@Language("SQL") String query, Object... params) {
-        try (Connection connection = QueryBuilder.defaultConnectionFactory.getConnection();
-            PreparedStatement ps = connection.prepareStatement(query)) {
+        try (Connection connection = getConnection();
+            PreparedStatement ps = connection.prepareStatement(query);
+            QueryFuture.Registration registration = QueryBuilder
+                .track(ps, QueryBuilder.getDefaultTimeout())) {
             int i = 1;
             for (Object o : params) {
-                ps.setObject(i++, o);
+                ParameterBinder.bind(ps, i++, o);
             }
             return ps.executeUpdate();
         } catch (SQLException e) {
+            failTransaction(e);
             log.error("Could not execute update", e);
         }
         return 0;
@@ -219,8 +223,9 @@ public class DB {
     @NotNull
     public static CompletableFuture<Integer> executeUpdateAsync(@Language("SQL") String query,
         Object... params) {
-        return CompletableFuture
-            .supplyAsync(() -> executeUpdate(query, params), QueryBuilder.getThreadPool());
+        // In a transaction the statement runs inline on the transaction's connection
+        return QueryBuilder.supplyAsync(Transaction.current(), QueryPriority.NORMAL,
+            () -> executeUpdate(query, params));
     }
 
     /**
@@ -233,12 +238,13 @@ public class DB {
      */
     @Nullable
     public static Long executeInsert(@Language("SQL") String query, Object... params) {
-        try (Connection con = QueryBuilder.defaultConnectionFactory
-            .getConnection(); PreparedStatement statement = con.prepareStatement(query,
-            Statement.RETURN_GENERATED_KEYS)) {
-            int i = 0;
+        try (Connection con = getConnection(); PreparedStatement statement = con
+            .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+            QueryFuture.Registration registration = QueryBuilder
+                .track(statement, QueryBuilder.getDefaultTimeout())) {
+            int i = 1;
             for (Object o : params) {
-                statement.setObject(i++, o);
+                ParameterBinder.bind(statement, i++, o);
             }
             statement.executeUpdate();
             try (ResultSet rs = statement.getGeneratedKeys()) {
@@ -252,6 +258,7 @@ public class DB {
                 return result;
             }
         } catch (SQLException e) {
+            failTransaction(e);
             log.error("Could not execute insert", e);
         }
         return null;
@@ -271,8 +278,65 @@ public class DB {
     @NotNull
     public static CompletableFuture<Long> executeInsertAsync(@Language("SQL") String query,
         Object... params) {
-        return CompletableFuture
-            .supplyAsync(() -> executeInsert(query, params), QueryBuilder.getThreadPool());
+        // In a transaction the statement runs inline on the transaction's connection
+        return QueryBuilder.supplyAsync(Transaction.current(), QueryPriority.NORMAL,
+            () -> executeInsert(query, params));
+    }
+
+    /**
+     * Runs the callback in a transaction. All queries and model operations performed by the
+     * callback on the current thread share one connection and are committed once the callback
+     * returns. If the callback throws an exception or any of its queries fail, the transaction is
+     * rolled back.
+     * <br>
+     * If a transaction is already running on the current thread, the callback is run in a nested
+     * transaction that only rolls back to a savepoint
+     *
+     * @param callback The callback to run
+     *
+     * @throws IllegalStateException If the transaction was rolled back due to a failure
+     */
+    public static void transaction(TransactionCallback callback) {
+        Transaction.run(QueryBuilder.defaultConnectionFactory, callback);
+    }
+
+    /**
+     * Runs the callback in a transaction async. The transaction is not nested into transactions
+     * running on the calling thread
+     *
+     * @param callback The callback to run
+     *
+     * @return A completable future completed when the transaction has been committed
+     *
+     * @see #transaction(TransactionCallback)
+     */
+    @NotNull
+    public static CompletableFuture<Void> transactionAsync(TransactionCallback callback) {
+        return QueryBuilder.getExecutor().submit(() -> {
+            transaction(callback);
+            return null;
+        }, QueryPriority.NORMAL);
+    }
+
+    /**
+     * Gets a connection for executing updates, using the current transaction's connection if there
+     * is one
+     *
+     * @return The connection
+     */
+    private static Connection getConnection() {
+        Transaction transaction = Transaction.current();
+        if (transaction != null) {
+            return transaction.getConnection();
+        }
+        return QueryBuilder.defaultConnectionFactory.getConnection(StatementType.WRITE);
+    }
+
+    private static void failTransaction(Throwable cause) {
+        Transaction transaction = Transaction.current();
+        if (transaction != null) {
+            transaction.fail(cause);
+        }
     }
 
 }
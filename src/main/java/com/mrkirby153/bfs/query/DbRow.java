@@ -1,15 +1,99 @@
 package com.mrkirby153.bfs.query;
 
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
-public class DbRow extends HashMap<String, Object> {
+/**
+ * A row returned by a query. Rows read from a result set share its {@link RowSchema} and hold
+ * their values in arrays, with numeric columns stored as primitives and their nulls tracked in a
+ * bitmap. Values of another type put into a primitive column are boxed in the row. A row falls
+ * back to a hash map once a column outside of its schema is added
+ */
+public class DbRow extends AbstractMap<String, Object> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The schema of the row, or null if the row is backed by a map
+     */
+    private transient RowSchema schema;
+
+    /**
+     * The values of the schema's object columns
+     */
+    private transient Object[] values;
+
+    /**
+     * The values of the schema's long and int columns, or null if it has none
+     */
+    private transient long[] longs;
+
+    /**
+     * The values of the schema's double columns, or null if it has none
+     */
+    private transient double[] doubles;
+
+    /**
+     * The bitmap of the primitive columns holding null, by slot, or null if none do
+     */
+    private transient long[] nulls;
+
+    /**
+     * The boxed values of primitive columns set to a value of another type, by slot, or null if
+     * none were
+     */
+    private transient Object[] boxed;
+
+    /**
+     * The bitmap of the schema's columns removed from the row, by slot, or null if none were
+     */
+    private transient long[] removed;
+
+    /**
+     * The number of the schema's columns in the row
+     */
+    private transient int size;
+
+    /**
+     * The columns of the row, if it is not backed by a schema
+     */
+    private HashMap<String, Object> map;
+
+    public DbRow() {
+        this.map = new HashMap<>();
+    }
+
+    /**
+     * Creates a row read from a result set. The arrays are owned by the row
+     *
+     * @param schema  The schema of the result set
+     * @param values  The values of the schema's object columns
+     * @param longs   The values of the schema's long and int columns
+     * @param doubles The values of the schema's double columns
+     * @param nulls   The bitmap of the primitive columns holding null
+     */
+    DbRow(RowSchema schema, Object[] values, long[] longs, double[] doubles, long[] nulls) {
+        this.schema = schema;
+        this.values = values;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.nulls = nulls;
+        this.size = schema.size();
+    }
 
     public <T> T get(String column) {
-        return (T) super.get(column);
+        return (T) get((Object) column);
     }
 
     public <T> T get(String column, T def) {
-        T res = (T) super.get(column);
+        T res = (T) get((Object) column);
         return res == null ? def : res;
     }
 
@@ -54,20 +138,446 @@ public class DbRow extends HashMap<String, Object> {
     }
 
     public <T> T remove(String column) {
-        return (T) super.remove(column);
+        return (T) remove((Object) column);
     }
 
     public <T> T remove(String col, T def) {
-        T res = (T) super.remove(col);
+        T res = (T) remove((Object) col);
         if (res == null) {
             return def;
         }
         return res;
     }
 
+    /**
+     * Gets the value of a numeric column as a long. Columns the driver returns as {@link Long} or
+     * {@link Integer} are read without boxing
+     *
+     * @param col The column
+     *
+     * @return The value, or 0 if the column is null or missing
+     */
+    public long getLongValue(String col) {
+        return getLongValue(col, 0);
+    }
+
+    /**
+     * Gets the value of a numeric column as a long
+     *
+     * @param col The column
+     * @param def The value returned if the column is null or missing
+     *
+     * @return The value
+     *
+     * @see #getLongValue(String)
+     */
+    public long getLongValue(String col, long def) {
+        int slot = primitiveSlot(col);
+        if (slot != -1) {
+            if (isNullSlot(slot)) {
+                return def;
+            }
+            return schema.kind(slot) == RowSchema.DOUBLE ? (long) doubles[schema.offset(slot)]
+                : longs[schema.offset(slot)];
+        }
+        Number value = get(col);
+        return value != null ? value.longValue() : def;
+    }
+
+    /**
+     * Gets the value of a numeric column as an int. Columns the driver returns as {@link Long} or
+     * {@link Integer} are read without boxing
+     *
+     * @param col The column
+     *
+     * @return The value, or 0 if the column is null or missing
+     */
+    public int getIntValue(String col) {
+        return getIntValue(col, 0);
+    }
+
+    /**
+     * Gets the value of a numeric column as an int
+     *
+     * @param col The column
+     * @param def The value returned if the column is null or missing
+     *
+     * @return The value
+     *
+     * @see #getIntValue(String)
+     */
+    public int getIntValue(String col, int def) {
+        int slot = primitiveSlot(col);
+        if (slot != -1) {
+            if (isNullSlot(slot)) {
+                return def;
+            }
+            return schema.kind(slot) == RowSchema.DOUBLE ? (int) doubles[schema.offset(slot)]
+                : (int) longs[schema.offset(slot)];
+        }
+        Number value = get(col);
+        return value != null ? value.intValue() : def;
+    }
+
+    /**
+     * Gets the value of a numeric column as a double. Columns the driver returns as
+     * {@link Double}, {@link Long} or {@link Integer} are read without boxing
+     *
+     * @param col The column
+     *
+     * @return The value, or 0 if the column is null or missing
+     */
+    public double getDoubleValue(String col) {
+        return getDoubleValue(col, 0);
+    }
+
+    /**
+     * Gets the value of a numeric column as a double
+     *
+     * @param col The column
+     * @param def The value returned if the column is null or missing
+     *
+     * @return The value
+     *
+     * @see #getDoubleValue(String)
+     */
+    public double getDoubleValue(String col, double def) {
+        int slot = primitiveSlot(col);
+        if (slot != -1) {
+            if (isNullSlot(slot)) {
+                return def;
+            }
+            return schema.kind(slot) == RowSchema.DOUBLE ? doubles[schema.offset(slot)]
+                : longs[schema.offset(slot)];
+        }
+        Number value = get(col);
+        return value != null ? value.doubleValue() : def;
+    }
+
+    /**
+     * Checks if a column is null or missing, without boxing primitive columns
+     *
+     * @param col The column
+     *
+     * @return True if the column is null or missing
+     */
+    public boolean isNull(String col) {
+        int slot = primitiveSlot(col);
+        if (slot != -1) {
+            return isNullSlot(slot);
+        }
+        return get((Object) col) == null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (schema == null) {
+            return map.get(key);
+        }
+        int slot = schema.slotOf(key);
+        if (slot == -1 || isSet(removed, slot)) {
+            return null;
+        }
+        return value(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (schema == null) {
+            return map.containsKey(key);
+        }
+        int slot = schema.slotOf(key);
+        return slot != -1 && !isSet(removed, slot);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (schema != null) {
+            int slot = schema.slotOf(key);
+            if (slot != -1) {
+                boolean absent = isSet(removed, slot);
+                Object old = absent ? null : value(slot);
+                store(slot, value);
+                if (absent) {
+                    removed[slot >>> 6] &= ~(1L << slot);
+                    size++;
+                }
+                return old;
+            }
+            detach();
+        }
+        return map.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (schema == null) {
+            return map.remove(key);
+        }
+        int slot = schema.slotOf(key);
+        if (slot == -1 || isSet(removed, slot)) {
+            return null;
+        }
+        Object old = value(slot);
+        removeSlot(slot);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        schema = null;
+        values = null;
+        longs = null;
+        doubles = null;
+        nulls = null;
+        boxed = null;
+        removed = null;
+        size = 0;
+        map = new HashMap<>();
+    }
+
+    @Override
+    public int size() {
+        return schema == null ? map.size() : size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        if (schema == null) {
+            map.forEach(action);
+            return;
+        }
+        for (int slot = 0; slot < schema.size(); slot++) {
+            if (!isSet(removed, slot)) {
+                action.accept(schema.label(slot), value(slot));
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (schema == null) {
+            return map.entrySet();
+        }
+        return new SlotSet();
+    }
+
     public DbRow clone() {
+        if (schema != null) {
+            DbRow row = new DbRow(schema, values.clone(), longs != null ? longs.clone() : null,
+                doubles != null ? doubles.clone() : null, nulls != null ? nulls.clone() : null);
+            row.boxed = boxed != null ? boxed.clone() : null;
+            row.removed = removed != null ? removed.clone() : null;
+            row.size = size;
+            return row;
+        }
         DbRow row = new DbRow();
         row.putAll(this);
         return row;
     }
+
+    /**
+     * Gets the slot of a column stored as a primitive
+     *
+     * @param col The column
+     *
+     * @return The slot, or -1 if the column is not a primitive column of the row
+     */
+    private int primitiveSlot(String col) {
+        if (schema == null) {
+            return -1;
+        }
+        int slot = schema.slotOf(col);
+        if (slot == -1 || schema.kind(slot) == RowSchema.OBJECT || isSet(removed, slot)
+            || isBoxed(slot)) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private boolean isNullSlot(int slot) {
+        return isSet(nulls, slot);
+    }
+
+    private boolean isBoxed(int slot) {
+        return boxed != null && boxed[slot] != null;
+    }
+
+    private static boolean isSet(long[] bits, int slot) {
+        return bits != null && (bits[slot >>> 6] & 1L << slot) != 0;
+    }
+
+    /**
+     * Gets the value of a slot, boxing primitive columns
+     *
+     * @param slot The slot
+     *
+     * @return The value
+     */
+    private Object value(int slot) {
+        if (isBoxed(slot)) {
+            return boxed[slot];
+        }
+        int offset = schema.offset(slot);
+        switch (schema.kind(slot)) {
+            case RowSchema.LONG:
+                return isNullSlot(slot) ? null : (Object) longs[offset];
+            case RowSchema.INT:
+                return isNullSlot(slot) ? null : (Object) (int) longs[offset];
+            case RowSchema.DOUBLE:
+                return isNullSlot(slot) ? null : (Object) doubles[offset];
+            default:
+                return values[offset];
+        }
+    }
+
+    /**
+     * Stores the value of a slot. Values that do not fit a primitive slot are boxed, so that the
+     * row keeps its schema while its entries are iterated
+     *
+     * @param slot  The slot
+     * @param value The value
+     */
+    private void store(int slot, Object value) {
+        int offset = schema.offset(slot);
+        byte kind = schema.kind(slot);
+        if (kind == RowSchema.OBJECT) {
+            values[offset] = value;
+            return;
+        }
+        if (boxed != null) {
+            boxed[slot] = null;
+        }
+        if (value == null) {
+            if (nulls == null) {
+                nulls = new long[(schema.size() + 63) >>> 6];
+            }
+            nulls[slot >>> 6] |= 1L << slot;
+            return;
+        }
+        if (kind == RowSchema.LONG && value instanceof Long) {
+            longs[offset] = (Long) value;
+        } else if (kind == RowSchema.INT && value instanceof Integer) {
+            longs[offset] = (Integer) value;
+        } else if (kind == RowSchema.DOUBLE && value instanceof Double) {
+            doubles[offset] = (Double) value;
+        } else {
+            if (boxed == null) {
+                boxed = new Object[schema.size()];
+            }
+            boxed[slot] = value;
+        }
+        if (nulls != null) {
+            nulls[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    private void removeSlot(int slot) {
+        if (removed == null) {
+            removed = new long[(schema.size() + 63) >>> 6];
+        }
+        removed[slot >>> 6] |= 1L << slot;
+        size--;
+    }
+
+    /**
+     * Moves the row's columns into a map, so that columns outside of the schema can be added
+     */
+    private void detach() {
+        HashMap<String, Object> detached = new HashMap<>();
+        forEach(detached::put);
+        clear();
+        map = detached;
+    }
+
+    /**
+     * Serializes the row as a map, as the schema is shared with the other rows of its result set
+     *
+     * @return The row to serialize
+     */
+    private Object writeReplace() {
+        if (schema == null) {
+            return this;
+        }
+        DbRow row = new DbRow();
+        forEach(row.map::put);
+        return row;
+    }
+
+    /**
+     * The columns of a row backed by a schema
+     */
+    private class SlotSet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            RowSchema iterated = schema;
+            return new Iterator<Entry<String, Object>>() {
+                private int next = advance(0);
+                private int last = -1;
+
+                private int advance(int slot) {
+                    while (slot < iterated.size() && isSet(removed, slot)) {
+                        slot++;
+                    }
+                    return slot;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    checkSchema();
+                    return next < iterated.size();
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance(next + 1);
+                    return new ColumnEntry(last);
+                }
+
+                @Override
+                public void remove() {
+                    checkSchema();
+                    if (last == -1) {
+                        throw new IllegalStateException();
+                    }
+                    removeSlot(last);
+                    last = -1;
+                }
+
+                private void checkSchema() {
+                    if (schema != iterated) {
+                        throw new ConcurrentModificationException();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A column of a row backed by a schema, writing its value through to the row
+     */
+    private class ColumnEntry extends SimpleEntry<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        ColumnEntry(int slot) {
+            super(schema.label(slot), value(slot));
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.mrkirby153.bfs.query;
+
+/**
+ * A listener notified as the chunks of a bulk insert are inserted
+ *
+ * @see QueryBuilder#onInsertProgress(InsertProgressListener)
+ */
+@FunctionalInterface
+public interface InsertProgressListener {
+
+    /**
+     * Called after a chunk of rows was inserted. Chunks inserted in parallel may be reported out
+     * of order, and from different threads
+     *
+     * @param chunk        The index of the chunk
+     * @param chunks       The number of chunks
+     * @param insertedRows The number of rows inserted so far
+     * @param totalRows    The number of rows being inserted
+     */
+    void onChunkInserted(int chunk, int chunks, long insertedRows, long totalRows);
+}
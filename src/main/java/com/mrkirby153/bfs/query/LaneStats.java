@@ -0,0 +1,41 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Data;
+
+/**
+ * A point in time snapshot of the statistics of one priority lane of an
+ * {@link AdmissionController}
+ */
+@Data
+public class LaneStats {
+
+    /**
+     * The priority of the lane's queries
+     */
+    private final QueryPriority priority;
+
+    /**
+     * The number of the lane's queries currently running
+     */
+    private final int running;
+
+    /**
+     * The number of the lane's queries currently waiting to run
+     */
+    private final int queued;
+
+    /**
+     * The maximum number of the lane's queries that can run at once
+     */
+    private final int maxConcurrent;
+
+    /**
+     * The lane's share of the executor's threads when other lanes have work waiting
+     */
+    private final int weight;
+
+    /**
+     * The total number of queries admitted into the lane and not dropped
+     */
+    private final long admitted;
+}
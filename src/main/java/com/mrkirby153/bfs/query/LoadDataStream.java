@@ -0,0 +1,215 @@
+package com.mrkirby153.bfs.query;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes rows as the tab-separated, backslash escaped UTF-8 text read by
+ * {@link com.mrkirby153.bfs.query.grammar.Grammar#compileLoadData(QueryBuilder, String...)}. Rows
+ * are encoded as the stream is read, so only a small buffer of them is held in memory
+ */
+class LoadDataStream extends InputStream {
+
+    /**
+     * The number of encoded bytes buffered before they are read
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] NULL = {'\\', 'N'};
+
+    private final Iterator<Map<String, Object>> rows;
+    private final String[] columns;
+    private final Set<String> columnSet;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private long rowCount = 0;
+
+    /**
+     * Creates a stream of rows
+     *
+     * @param first   The first row, whose columns every row must have
+     * @param columns The columns of the rows, in the order of the fields
+     * @param rows    The rows after the first
+     */
+    LoadDataStream(Map<String, Object> first, String[] columns,
+        Iterator<Map<String, Object>> rows) {
+        this.rows = rows;
+        this.columns = columns;
+        this.columnSet = first.keySet();
+        encode(first);
+    }
+
+    /**
+     * Gets the number of rows encoded so far
+     *
+     * @return The number of rows
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int read = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    /**
+     * Encodes rows into the buffer once it has been read
+     *
+     * @return False if every row has been read
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        position = 0;
+        limit = 0;
+        while (limit < BUFFER_SIZE && rows.hasNext()) {
+            Map<String, Object> row = rows.next();
+            if (!row.keySet().equals(columnSet)) {
+                throw new IOException(
+                    "Inconsistent columns. Expected " + columnSet + " got " + row.keySet());
+            }
+            encode(row);
+        }
+        return limit > 0;
+    }
+
+    private void encode(Map<String, Object> row) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                write('\t');
+            }
+            encodeValue(row.get(columns[i]));
+        }
+        write('\n');
+        rowCount++;
+    }
+
+    private void encodeValue(Object value) {
+        if (value == null) {
+            ensureCapacity(NULL.length);
+            System.arraycopy(NULL, 0, buffer, limit, NULL.length);
+            limit += NULL.length;
+        } else if (value instanceof byte[]) {
+            for (byte b : (byte[]) value) {
+                writeEscaped(b);
+            }
+        } else if (value instanceof Boolean) {
+            write((Boolean) value ? '1' : '0');
+        } else if (value instanceof BigDecimal) {
+            encodeString(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Instant) {
+            encodeString(Timestamp.from((Instant) value).toString());
+        } else if (value instanceof java.util.Date && !(value instanceof Timestamp)
+            && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)) {
+            encodeString(new Timestamp(((java.util.Date) value).getTime()).toString());
+        } else if (value instanceof Enum) {
+            encodeString(((Enum<?>) value).name());
+        } else {
+            encodeString(value.toString());
+        }
+    }
+
+    /**
+     * Encodes a string as UTF-8, escaping the characters that separate fields and rows
+     *
+     * @param value The string
+     */
+    private void encodeString(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeEscaped((byte) c);
+            } else if (c < 0x800) {
+                write(0xC0 | c >> 6);
+                write(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xF0 | codePoint >> 18);
+                write(0x80 | codePoint >> 12 & 0x3F);
+                write(0x80 | codePoint >> 6 & 0x3F);
+                write(0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates cannot be encoded
+                write('?');
+            } else {
+                write(0xE0 | c >> 12);
+                write(0x80 | c >> 6 & 0x3F);
+                write(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void writeEscaped(byte b) {
+        switch (b) {
+            case '\\':
+                write('\\');
+                write('\\');
+                break;
+            case '\t':
+                write('\\');
+                write('t');
+                break;
+            case '\n':
+                write('\\');
+                write('n');
+                break;
+            case '\r':
+                write('\\');
+                write('r');
+                break;
+            case 0:
+                write('\\');
+                write('0');
+                break;
+            default:
+                write(b);
+        }
+    }
+
+    private void write(int b) {
+        ensureCapacity(1);
+        buffer[limit++] = (byte) b;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (limit + bytes > buffer.length) {
+            // A single row may be larger than the buffer
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, limit + bytes));
+        }
+    }
+}
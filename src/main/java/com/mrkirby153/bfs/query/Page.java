@@ -0,0 +1,41 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A page of a query's results, read with keyset pagination
+ *
+ * @param <T> The type of the rows
+ *
+ * @see QueryBuilder#page(int)
+ */
+@Getter
+@RequiredArgsConstructor
+public class Page<T> {
+
+    /**
+     * The rows of the page
+     */
+    private final List<T> items;
+
+    /**
+     * The cursor continuing after the last row of the page, or null if this is the last page
+     *
+     * @see QueryBuilder#seekAfter(String)
+     */
+    @Nullable
+    private final String cursor;
+
+    /**
+     * Checks if there are rows after this page
+     *
+     * @return True if there is a next page
+     */
+    public boolean hasNext() {
+        return cursor != null;
+    }
+}
@@ -0,0 +1,214 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.elements.OrderElement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes the values of a row's order columns into an opaque cursor that a page continues after.
+ * Cursors record the ordering they were created for, and are rejected by queries ordered
+ * differently
+ */
+final class PageCursor {
+
+    private static final byte VERSION = 1;
+
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte STRING = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte DECIMAL = 7;
+    private static final byte TIMESTAMP = 8;
+    private static final byte DATE = 9;
+    private static final byte TIME = 10;
+    private static final byte SHORT = 11;
+    private static final byte BYTE = 12;
+
+    private PageCursor() {
+        // Utility class
+    }
+
+    /**
+     * Encodes the cursor continuing after a row
+     *
+     * @param orders The orders of the query
+     * @param row    The last row of the page
+     *
+     * @return The cursor
+     */
+    static String encode(List<OrderElement> orders, DbRow row) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(signature(orders));
+            for (OrderElement order : orders) {
+                String label = label(order.getColumn());
+                if (!row.containsKey(label)) {
+                    throw new IllegalStateException(String
+                        .format("The column %s must be selected to paginate on it", label));
+                }
+                write(out, label, row.get(label));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode the cursor", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decodes a cursor into the values of the order columns of the row it continues after
+     *
+     * @param orders The orders of the query
+     * @param cursor The cursor
+     *
+     * @return The values, in the order of the query's orders
+     */
+    static Object[] decode(List<OrderElement> orders, String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The cursor is malformed", e);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION || in.readInt() != signature(orders)) {
+                throw new IllegalArgumentException(
+                    "The cursor was not created by a query with the same ordering");
+            }
+            Object[] values = new Object[orders.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = read(in);
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("The cursor is malformed");
+            }
+            return values;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The cursor is malformed", e);
+        }
+    }
+
+    /**
+     * Gets the label of an order column in the returned rows
+     *
+     * @param column The column, optionally qualified with its table
+     *
+     * @return The label
+     */
+    private static String label(String column) {
+        return column.substring(column.lastIndexOf('.') + 1);
+    }
+
+    private static int signature(List<OrderElement> orders) {
+        int hash = 1;
+        for (OrderElement order : orders) {
+            hash = 31 * hash + order.getColumn().hashCode();
+            hash = 31 * hash + order.getDirection().ordinal();
+        }
+        return hash;
+    }
+
+    private static void write(DataOutputStream out, String column, Object value)
+        throws IOException {
+        if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            out.writeByte(DECIMAL);
+            out.writeInt(decimal.scale());
+            out.writeShort(unscaled.length);
+            out.write(unscaled);
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Time) value).getTime());
+        } else if (value == null) {
+            throw new IllegalStateException(
+                String.format("Cannot paginate on the null value of %s", column));
+        } else {
+            throw new IllegalStateException(String
+                .format("Cannot paginate on %s, values of %s are not supported", column,
+                    value.getClass().getName()));
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case STRING:
+                return in.readUTF();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DECIMAL:
+                int scale = in.readInt();
+                byte[] unscaled = new byte[in.readUnsignedShort()];
+                in.readFully(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case DATE:
+                return new Date(in.readLong());
+            case TIME:
+                return new Time(in.readLong());
+            default:
+                throw new IllegalArgumentException("The cursor is malformed");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mrkirby153.bfs.query;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds values to statements with the setter matching the value's class, so that the driver does
+ * not have to inspect the value to work out its type. Values of classes without a binder are bound
+ * with {@link PreparedStatement#setObject(int, Object)}
+ */
+public final class ParameterBinder {
+
+    /**
+     * The binders of each class
+     */
+    private static final ConcurrentHashMap<Class<?>, Binder<?>> binders = new ConcurrentHashMap<>();
+
+    static {
+        register(Long.class, (ps, i, v) -> ps.setLong(i, v));
+        register(Integer.class, (ps, i, v) -> ps.setInt(i, v));
+        register(Short.class, (ps, i, v) -> ps.setShort(i, v));
+        register(Byte.class, (ps, i, v) -> ps.setByte(i, v));
+        register(Boolean.class, (ps, i, v) -> ps.setBoolean(i, v));
+        register(Double.class, (ps, i, v) -> ps.setDouble(i, v));
+        register(Float.class, (ps, i, v) -> ps.setFloat(i, v));
+        register(String.class, PreparedStatement::setString);
+        register(BigDecimal.class, PreparedStatement::setBigDecimal);
+        register(byte[].class, PreparedStatement::setBytes);
+        register(Timestamp.class, PreparedStatement::setTimestamp);
+        register(Date.class, PreparedStatement::setDate);
+        register(Time.class, PreparedStatement::setTime);
+        register(java.util.Date.class, (ps, i, v) -> ps.setTimestamp(i, new Timestamp(v.getTime())));
+        register(Instant.class, (ps, i, v) -> ps.setTimestamp(i, Timestamp.from(v)));
+    }
+
+    private ParameterBinder() {
+        // Utility class
+    }
+
+    /**
+     * Registers the binder used for values of a class, replacing the existing binder
+     *
+     * @param clazz  The class of the values. Subclasses are not bound with the binder
+     * @param binder The binder
+     */
+    public static <T> void register(Class<T> clazz, Binder<T> binder) {
+        binders.put(clazz, binder);
+    }
+
+    /**
+     * Binds a value to a statement
+     *
+     * @param statement The statement
+     * @param index     The index of the parameter, starting at 1
+     * @param value     The value
+     *
+     * @throws SQLException If the value could not be bound
+     */
+    @SuppressWarnings("unchecked")
+    public static void bind(PreparedStatement statement, int index, Object value)
+        throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+            return;
+        }
+        Binder<Object> binder = (Binder<Object>) binders.get(value.getClass());
+        if (binder != null) {
+            binder.bind(statement, index, value);
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    /**
+     * Binds values of a class to a statement
+     *
+     * @param <T> The class of the values
+     */
+    @FunctionalInterface
+    public interface Binder<T> {
+
+        void bind(PreparedStatement statement, int index, T value) throws SQLException;
+    }
+}
@@ -0,0 +1,223 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.connection.ConnectionFactory;
+import com.mrkirby153.bfs.connection.StatementType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable, compiled query that can be executed many times with different values for its
+ * placeholders. Executing a prepared query only binds values, the query is never rebuilt or
+ * recompiled. Prepared queries are safe to share between threads.
+ * <br>
+ * A prepared query uses either positional placeholders, bound by
+ * {@link #execute(Object...)} in the order they appear in the query, or named placeholders,
+ * bound by {@link #execute(Map)}.
+ *
+ * @param <R> The type of the returned rows
+ *
+ * @see QueryBuilder#prepare()
+ */
+@Slf4j
+public class PreparedQuery<R> {
+
+    /**
+     * The compiled SQL
+     */
+    @Getter
+    private final String sql;
+
+    /**
+     * The values bound to the statement, with placeholders for the values provided on execution
+     */
+    private final Object[] bindings;
+
+    /**
+     * The number of positional placeholders
+     */
+    private final int positionalCount;
+
+    /**
+     * The names of the named placeholders
+     */
+    private final Set<String> names;
+
+    private final ConnectionFactory connectionFactory;
+    private final Duration timeout;
+    private final QueryPriority priority;
+    private final Function<DbRow, R> mapper;
+
+    PreparedQuery(String sql, Object[] bindings, ConnectionFactory connectionFactory,
+        Duration timeout, QueryPriority priority, Function<DbRow, R> mapper) {
+        this.sql = sql;
+        this.bindings = bindings;
+        this.connectionFactory = connectionFactory;
+        this.timeout = timeout;
+        this.priority = priority;
+        this.mapper = mapper;
+        int positional = 0;
+        Set<String> names = new LinkedHashSet<>();
+        for (Object binding : bindings) {
+            if (binding instanceof QueryParameter) {
+                QueryParameter parameter = (QueryParameter) binding;
+                if (parameter.isNamed()) {
+                    names.add(parameter.getName());
+                } else {
+                    positional++;
+                }
+            }
+        }
+        if (positional > 0 && !names.isEmpty()) {
+            throw new IllegalStateException(
+                "A prepared query cannot have both named and positional parameters");
+        }
+        this.positionalCount = positional;
+        this.names = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Gets the names of the query's named placeholders
+     *
+     * @return The names
+     */
+    public Set<String> getParameterNames() {
+        return names;
+    }
+
+    /**
+     * Gets the number of the query's positional placeholders
+     *
+     * @return The number of positional placeholders
+     */
+    public int getParameterCount() {
+        return positionalCount;
+    }
+
+    /**
+     * Executes the query, binding the arguments to the positional placeholders in order
+     *
+     * @param args The values of the placeholders
+     *
+     * @return The returned rows
+     */
+    public List<R> execute(Object... args) {
+        try {
+            return executeAsync(args).get();
+        } catch (InterruptedException e) {
+            // Ignore
+        } catch (ExecutionException e) {
+            log.error("Could not execute prepared query", e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Executes the query, binding the arguments to the named placeholders
+     *
+     * @param args The values of the placeholders
+     *
+     * @return The returned rows
+     */
+    public List<R> execute(Map<String, ?> args) {
+        try {
+            return executeAsync(args).get();
+        } catch (InterruptedException e) {
+            // Ignore
+        } catch (ExecutionException e) {
+            log.error("Could not execute prepared query", e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Executes the query async, binding the arguments to the positional placeholders in order
+     *
+     * @param args The values of the placeholders
+     *
+     * @return A completable future completed with the returned rows
+     */
+    public CompletableFuture<List<R>> executeAsync(Object... args) {
+        if (!names.isEmpty()) {
+            throw new IllegalArgumentException(
+                "The query has named parameters, its arguments must be given as a map");
+        }
+        if (args.length != positionalCount) {
+            throw new IllegalArgumentException(String
+                .format("Expected %d arguments but got %d", positionalCount, args.length));
+        }
+        Object[] values = bindings.clone();
+        int arg = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof QueryParameter) {
+                values[i] = args[arg++];
+            }
+        }
+        return run(values);
+    }
+
+    /**
+     * Executes the query async, binding the arguments to the named placeholders
+     *
+     * @param args The values of the placeholders
+     *
+     * @return A completable future completed with the returned rows
+     */
+    public CompletableFuture<List<R>> executeAsync(Map<String, ?> args) {
+        if (positionalCount > 0) {
+            throw new IllegalArgumentException(
+                "The query has positional parameters, its arguments must be given in order");
+        }
+        Object[] values = bindings.clone();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof QueryParameter) {
+                String name = ((QueryParameter) values[i]).getName();
+                if (!args.containsKey(name)) {
+                    throw new IllegalArgumentException(
+                        String.format("No value was given for the parameter %s", name));
+                }
+                values[i] = args.get(name);
+            }
+        }
+        return run(values);
+    }
+
+    private CompletableFuture<List<R>> run(Object[] values) {
+        Transaction transaction = Transaction.current();
+        return QueryBuilder.supplyAsync(transaction, priority, () -> {
+            try (Connection c = QueryBuilder
+                .openConnection(transaction, connectionFactory, StatementType.READ);
+                PreparedStatement ps = c.prepareStatement(sql);
+                QueryFuture.Registration registration = QueryBuilder
+                    .track(ps, timeout != null ? timeout : QueryBuilder.getDefaultTimeout())) {
+                for (int i = 0; i < values.length; i++) {
+                    ParameterBinder.bind(ps, i + 1, values[i]);
+                }
+                log.trace("Executing prepared SELECT: {}", ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<DbRow> rows = QueryBuilder.parse(rs);
+                    return rows.stream().map(mapper).filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                }
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+}
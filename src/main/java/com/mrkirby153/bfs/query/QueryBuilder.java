@@ -2,6 +2,9 @@ package com.mrkirby153.bfs.query;
 
 import com.mrkirby153.bfs.Pair;
 import com.mrkirby153.bfs.connection.ConnectionFactory;
+import com.mrkirby153.bfs.connection.StatementType;
+import com.mrkirby153.bfs.query.Bindings.Section;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
 import com.mrkirby153.bfs.query.elements.JoinElement;
 import com.mrkirby153.bfs.query.elements.OrderElement;
 import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
@@ -19,26 +22,35 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.intellij.lang.annotations.Language;
 
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A query builder providing a declarative java-like interface for SQL queries
@@ -48,22 +60,76 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class QueryBuilder {
 
-    private static final String[] operators = new String[]{
+    private static final Set<String> operators = new HashSet<>(Arrays.asList(
         "=", "<", ">", "<=", ">=", "<>", "!=", "<=>", "like", "like binary", "not like", "ilike",
         "&", "|", "^", "<<", ">>", "rlike", "regexp", "not regexp", "~", "~*", "!~*", "similar to",
         "not similar to", "not ilike", "~~*", "!~~*"
-    };
+    ));
     public static Grammar DEFAULT_GRAMMAR = new MySqlGrammar();
     public static ConnectionFactory defaultConnectionFactory;
-    // Give 5 threads for running queries
+    /**
+     * The executor running async queries
+     *
+     * @see #configureExecutor(QueryExecutorConfig)
+     */
     @Getter(AccessLevel.PACKAGE)
-    private static ExecutorService threadPool = Executors
-        .newFixedThreadPool(5, new QueryThreadPoolFactory());
+    private static volatile AdmissionController executor = new QueryExecutorConfig().build();
+    /**
+     * The timeout of queries that were not given one, or null if they should not time out
+     */
+    @Getter
+    @Setter
+    private static volatile Duration defaultTimeout = null;
+    /**
+     * If {@code WHERE IN} lists should be padded to the next power of two by repeating their last
+     * value, so that lists of similar sizes compile to the same SQL
+     */
+    @Getter
+    @Setter
+    private static volatile boolean inListPadding = true;
+    /**
+     * The largest {@code WHERE IN} list that is padded
+     */
+    @Getter
+    @Setter
+    private static volatile int maxPaddedInList = 1024;
+    /**
+     * The number of values in each query when a select with a larger {@code WHERE IN} list is split
+     * into chunks run in parallel, or 0 to never split selects
+     */
+    @Getter
+    @Setter
+    private static volatile int inListChunkSize = 1024;
+    /**
+     * The default size above which {@code WHERE IN} lists are loaded into a temporary table
+     *
+     * @see #temporaryTableThreshold(int)
+     */
+    @Getter
+    @Setter
+    private static volatile int defaultTemporaryTableThreshold = 0;
+    /**
+     * The statement interfaces of the drivers that can stream the rows of a bulk load
+     */
+    private static final String[] LOCAL_INFILE_STATEMENTS = {"com.mysql.cj.jdbc.JdbcStatement",
+        "com.mysql.jdbc.Statement", "org.mariadb.jdbc.MariaDbStatement"};
+    /**
+     * The estimated size of the largest statement sent by a bulk insert. The default is the
+     * smallest {@code max_allowed_packet} of supported MySQL versions
+     */
+    @Getter
+    @Setter
+    private static volatile int maxBulkInsertBytes = 4 * 1024 * 1024;
     private final Grammar grammar;
 
     @Setter
     private ConnectionFactory connectionFactory = defaultConnectionFactory;
 
+    /**
+     * The transaction the query builder was created in, if any
+     */
+    private final Transaction transaction = Transaction.current();
+
     /**
      * The table to execute the query on
      */
@@ -79,6 +145,21 @@ public class QueryBuilder {
      */
     private List<String> columns = new ArrayList<>();
 
+    /**
+     * A list of aggregates to return
+     */
+    private List<AggregateElement> aggregates = new ArrayList<>();
+
+    /**
+     * A list of columns to group the rows by
+     */
+    private List<String> groups = new ArrayList<>();
+
+    /**
+     * The having clauses to use
+     */
+    private List<WhereElement> havings = new ArrayList<>();
+
     /**
      * A list of orders on the query
      */
@@ -90,9 +171,9 @@ public class QueryBuilder {
     private List<JoinElement> joins = new ArrayList<>();
 
     /**
-     * A list of bindings grouped by the type of statement
+     * The values bound to the query, grouped by the section of the statement they appear in
      */
-    private Map<String, ArrayList<Object>> bindings = new HashMap<>();
+    private final Bindings bindings = new Bindings();
 
     /**
      * The limit of the query
@@ -109,6 +190,44 @@ public class QueryBuilder {
      */
     private boolean distinct = false;
 
+    /**
+     * The timeout of the query, or null to use the {@link #defaultTimeout}
+     */
+    private Duration timeout = null;
+
+    /**
+     * The priority the query is run with by the executor
+     */
+    private QueryPriority priority = QueryPriority.NORMAL;
+
+    /**
+     * The column holding the keys generated by inserts
+     */
+    private String generatedKey = "id";
+
+    /**
+     * The size above which {@code WHERE IN} lists are loaded into a temporary table, or 0 to
+     * never use temporary tables
+     */
+    private int temporaryTableThreshold = defaultTemporaryTableThreshold;
+
+    /**
+     * The temporary tables holding the values of large {@code WHERE IN} lists, created on the
+     * connection executing the query
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private List<TemporaryTable> temporaryTables = new ArrayList<>();
+
+    /**
+     * The number of connections bulk inserts are spread over
+     */
+    private int insertParallelism = 1;
+
+    /**
+     * The listener notified as the chunks of bulk inserts are inserted, or null
+     */
+    private InsertProgressListener insertProgressListener = null;
+
     @Getter
     private Map<QueryEvent.Type, List<QueryEventListener>> eventListeners = new ConcurrentHashMap<>();
 
@@ -116,6 +235,52 @@ public class QueryBuilder {
         this.grammar = DEFAULT_GRAMMAR;
     }
 
+    /**
+     * Replaces the executor used to run async queries. Queries already submitted to the previous
+     * executor are allowed to finish
+     *
+     * @param config The configuration of the new executor
+     */
+    public static void configureExecutor(QueryExecutorConfig config) {
+        AdmissionController previous = executor;
+        executor = config.build();
+        previous.shutdown();
+    }
+
+    /**
+     * Gets the statistics of the executor running async queries
+     *
+     * @return The statistics
+     */
+    public static AdmissionStats getExecutorStats() {
+        return executor.getStats();
+    }
+
+    /**
+     * Creates a positional placeholder for a value that is provided when a prepared query is
+     * executed
+     *
+     * @return The placeholder
+     *
+     * @see #prepare()
+     */
+    public static QueryParameter param() {
+        return new QueryParameter(null);
+    }
+
+    /**
+     * Creates a named placeholder for a value that is provided when a prepared query is executed
+     *
+     * @param name The name of the placeholder
+     *
+     * @return The placeholder
+     *
+     * @see #prepare()
+     */
+    public static QueryParameter param(String name) {
+        return new QueryParameter(name);
+    }
+
     /**
      * Selects the columns to return
      *
@@ -129,6 +294,21 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Selects an aggregate to return alongside the selected columns. Aggregates are computed over
+     * every row, or over each group if the query is grouped
+     *
+     * @param type   The aggregate function
+     * @param column The column to aggregate, or null to count every row
+     * @param alias  The name of the aggregate in the returned rows
+     *
+     * @return The query builder
+     */
+    public QueryBuilder selectAggregate(AggregateElement.Type type, String column, String alias) {
+        this.aggregates.add(new AggregateElement(type, column, alias));
+        return this;
+    }
+
     /**
      * Sets the table to query
      *
@@ -148,11 +328,21 @@ public class QueryBuilder {
     /**
      * Adds a binding to the query
      *
-     * @param section The section to add the bindings
+     * @param section The section to add the bindings (insert, update, where or having)
      * @param data    The data to bind
      */
     public void addBinding(String section, Object data) {
-        this.bindings.computeIfAbsent(section, s -> new ArrayList<>()).add(data);
+        addBinding(Section.valueOf(section.toUpperCase(Locale.ROOT)), data);
+    }
+
+    /**
+     * Adds a binding to the query
+     *
+     * @param section The section to add the bindings
+     * @param data    The data to bind
+     */
+    public void addBinding(Section section, Object data) {
+        this.bindings.add(section, data);
     }
 
     /**
@@ -166,7 +356,7 @@ public class QueryBuilder {
      * @return The query builder
      */
     private QueryBuilder where(String column, String operator, Object value, String bool) {
-        if (!Arrays.asList(operators).contains(operator.toLowerCase())) {
+        if (!operators.contains(operator.toLowerCase())) {
             throw new IllegalArgumentException(
                 String.format("The operator %s is not valid", operator));
         }
@@ -178,7 +368,7 @@ public class QueryBuilder {
             new Pair<>("operator", operator),
             new Pair<>("value", value));
         this.wheres.add(e);
-        this.addBinding("where", value);
+        this.addBinding(Section.WHERE, value);
         return this;
     }
 
@@ -240,10 +430,24 @@ public class QueryBuilder {
      * @return The builder
      */
     public QueryBuilder whereIn(String column, Object[] values, boolean not, String bool) {
+        if (temporaryTableThreshold > 0 && values.length > temporaryTableThreshold
+            && !hasParameter(values)) {
+            TemporaryTable table = TemporaryTable
+                .of(grammar, new LinkedHashSet<>(Arrays.asList(values)).toArray());
+            if (table != null) {
+                QueryBuilder sub = new QueryBuilder(grammar).table(table.getName())
+                    .select(TemporaryTable.COLUMN);
+                sub.temporaryTables.add(table);
+                return this.whereSub(column, sub, not, bool);
+            }
+        }
+        values = padInList(values);
         WhereElement e = new WhereElement(not ? Type.NOT_IN : Type.IN, column, bool,
             new Pair<>("values", values));
         this.wheres.add(e);
-        Arrays.stream(values).forEach(v -> this.addBinding("where", v));
+        for (Object value : values) {
+            this.addBinding(Section.WHERE, value);
+        }
         return this;
     }
 
@@ -251,6 +455,15 @@ public class QueryBuilder {
         return this.whereIn(column, values, false, "AND");
     }
 
+    /**
+     * Checks if the query uses temporary tables
+     *
+     * @return True if the query selects from or loads a temporary table
+     */
+    public boolean hasTemporaryTables() {
+        return !temporaryTables.isEmpty();
+    }
+
     public QueryBuilder whereIn(String column, Object[] values, String bool) {
         return this.whereIn(column, values, false, bool);
     }
@@ -275,8 +488,9 @@ public class QueryBuilder {
      */
     public QueryBuilder whereSub(String column, QueryBuilder builder, boolean not, String bool) {
         WhereElement e = new WhereElement(not ? Type.NOT_SUB : Type.SUB, column, bool,
-            new Pair<>("builder", builder));
-        builder.getBindings().forEach(this::addBinding);
+            new Pair<>("query", builder));
+        this.bindings.addAll(Section.WHERE, builder.getBindings());
+        this.temporaryTables.addAll(builder.temporaryTables);
         this.wheres.add(e);
         return this;
     }
@@ -308,6 +522,116 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Groups the returned rows by columns
+     *
+     * @param columns The columns to group by
+     *
+     * @return The query builder
+     */
+    public QueryBuilder groupBy(String... columns) {
+        this.groups.addAll(Arrays.asList(columns));
+        return this;
+    }
+
+    /**
+     * Adds a having clause to the query
+     *
+     * @param column    The column or alias
+     * @param aggregate The aggregate to compare instead of the column, or null
+     * @param operator  The comparison operator
+     * @param value     The value to compare
+     * @param bool      The boolean separator (AND or OR)
+     *
+     * @return The query builder
+     */
+    private QueryBuilder having(String column, AggregateElement aggregate, String operator,
+        Object value, String bool) {
+        if (!operators.contains(operator.toLowerCase())) {
+            throw new IllegalArgumentException(
+                String.format("The operator %s is not valid", operator));
+        }
+        WhereElement e = new WhereElement(Type.BASIC, column, bool,
+            new Pair<>("operator", operator),
+            new Pair<>("value", value),
+            new Pair<>("aggregate", aggregate));
+        this.havings.add(e);
+        this.addBinding(Section.HAVING, value);
+        return this;
+    }
+
+    public QueryBuilder having(String column, String operator, Object value) {
+        return this.having(column, null, operator, value, "AND");
+    }
+
+    public QueryBuilder orHaving(String column, String operator, Object value) {
+        return this.having(column, null, operator, value, "OR");
+    }
+
+    /**
+     * Adds a having clause comparing an aggregate of each group
+     *
+     * @param type     The aggregate function
+     * @param column   The column to aggregate, or null to count every row
+     * @param operator The comparison operator
+     * @param value    The value to compare
+     *
+     * @return The query builder
+     */
+    public QueryBuilder having(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        return this.having(column, new AggregateElement(type, column, null), operator, value,
+            "AND");
+    }
+
+    public QueryBuilder orHaving(AggregateElement.Type type, String column, String operator,
+        Object value) {
+        return this.having(column, new AggregateElement(type, column, null), operator, value,
+            "OR");
+    }
+
+    /**
+     * Continues the query after the row a cursor was created for, using the query's orders
+     * instead of an offset so that the database seeks straight to the row. The orders must be
+     * added before the cursor, and the last order should be a unique column (such as the primary
+     * key) so that every row has a distinct position. The seek is combined with every other where
+     * clause of the query using AND, even if they are joined with OR
+     *
+     * @param cursor The cursor of the previous page, or null to start from the first row
+     *
+     * @return The query builder
+     *
+     * @see #page(int)
+     */
+    public QueryBuilder seekAfter(String cursor) {
+        if (cursor == null) {
+            return this;
+        }
+        if (orders.isEmpty()) {
+            throw new IllegalStateException("The query must be ordered to continue after a cursor");
+        }
+        Object[] values = PageCursor.decode(orders, cursor);
+        OrderElement[] seek = orders.toArray(new OrderElement[0]);
+        boolean mixed = false;
+        for (OrderElement order : seek) {
+            mixed |= order.getDirection() != seek[0].getDirection();
+        }
+        List<Object> seekBindings = new ArrayList<>();
+        if (mixed) {
+            // Expanded into (a > ?) OR (a = ? AND b < ?) OR ...
+            for (int i = 0; i < values.length; i++) {
+                seekBindings.addAll(Arrays.asList(values).subList(0, i + 1));
+            }
+        } else {
+            seekBindings.addAll(Arrays.asList(values));
+        }
+        WhereElement e = new WhereElement(Type.SEEK, null, "AND", new Pair<>("orders", seek),
+            new Pair<>("bindings", seekBindings.toArray()));
+        this.wheres.add(e);
+        seekBindings.forEach(value -> addBinding(Section.SEEK, value));
+        return this;
+    }
+
     /**
      * Sets the limit for this query
      *
@@ -333,7 +657,7 @@ public class QueryBuilder {
      */
     public QueryBuilder join(JoinElement.Type type, String table, String first, String operator,
         String second) {
-        if (!Arrays.asList(operators).contains(operator.toLowerCase())) {
+        if (!operators.contains(operator.toLowerCase())) {
             throw new IllegalArgumentException(
                 String.format("The operator %s was not found", operator));
         }
@@ -374,6 +698,99 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Sets the timeout for this query. Queries running for longer than the timeout are cancelled
+     * by the driver. The timeout is rounded up to whole seconds
+     *
+     * @param timeout The timeout, or {@link Duration#ZERO} to never time out
+     *
+     * @return The query builder
+     */
+    public QueryBuilder timeout(Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("The timeout cannot be negative");
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Sets the priority of this query. Batch work should be run with {@link QueryPriority#BATCH}
+     * so that it does not delay latency sensitive queries
+     *
+     * @param priority The priority
+     *
+     * @return The query builder
+     */
+    public QueryBuilder priority(QueryPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Sets the column holding the keys generated by inserts. Grammars that return generated keys
+     * with the insert itself (such as {@link com.mrkirby153.bfs.query.grammar.PostgresGrammar})
+     * return this column
+     *
+     * @param column The column
+     *
+     * @return The query builder
+     */
+    public QueryBuilder generatedKey(String column) {
+        this.generatedKey = column;
+        return this;
+    }
+
+    /**
+     * Sets the number of connections the chunks of bulk inserts are spread over. Each connection
+     * inserts its chunks in its own transaction, so a failed insert may leave the chunks of other
+     * connections inserted. Bulk inserts in a transaction always use the transaction's connection
+     *
+     * @param connections The number of connections
+     *
+     * @return The query builder
+     */
+    public QueryBuilder insertParallelism(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection must be used");
+        }
+        this.insertParallelism = connections;
+        return this;
+    }
+
+    /**
+     * Sets the listener notified as the chunks of bulk inserts are inserted
+     *
+     * @param listener The listener, or null
+     *
+     * @return The query builder
+     */
+    public QueryBuilder onInsertProgress(InsertProgressListener listener) {
+        this.insertProgressListener = listener;
+        return this;
+    }
+
+    /**
+     * Sets the size above which {@code WHERE IN} and {@code WHERE NOT IN} lists added afterwards
+     * are loaded into a temporary table on the connection executing the query, and compared with
+     * a sub-query on the table instead of a list of values. The table is dropped once the query
+     * has executed.
+     * <br>
+     * Only lists of integers or strings are loaded into temporary tables, other lists are always
+     * bound as values. Queries using temporary tables cannot be prepared
+     *
+     * @param threshold The size, or 0 to never use temporary tables
+     *
+     * @return The query builder
+     */
+    public QueryBuilder temporaryTableThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The threshold cannot be negative");
+        }
+        this.temporaryTableThreshold = threshold;
+        return this;
+    }
+
     public final int update(List<Pair<String, Object>> data) {
         try {
             return updateAsync(data).get();
@@ -396,52 +813,385 @@ public class QueryBuilder {
         return Collections.emptyList();
     }
 
-    public CompletableFuture<List<DbRow>> queryAsync() {
-        return CompletableFuture.supplyAsync(() -> {
-            QueryEventManager.callEvents(QueryEvent.Type.PRE_GET, this);
-            String query = this.grammar.compileSelect(this);
-            try (Connection c = connectionFactory.getConnection(); PreparedStatement ps = c
-                .prepareStatement(query)) {
-                grammar.bind(this, ps);
-                log.trace("Executing SELECT: {}", ps);
-                try (ResultSet rs = ps.executeQuery()) {
-                    QueryEventManager.callEvents(QueryEvent.Type.POST_GET, this);
-                    return parse(rs);
-                }
-            } catch (SQLException e) {
-                throw new CompletionException(e);
-            }
-        }, threadPool);
+    /**
+     * Reads a page of the query's rows with keyset pagination. The query must be ordered, and the
+     * cursor of the returned page continues the query with {@link #seekAfter(String)}
+     *
+     * @param size The number of rows in the page
+     *
+     * @return The page
+     */
+    public Page<DbRow> page(int size) {
+        try {
+            return pageAsync(size).get();
+        } catch (InterruptedException e) {
+            // Ignore
+        } catch (ExecutionException e) {
+            log.error("Could not execute query", e);
+        }
+        return new Page<>(Collections.emptyList(), null);
     }
 
-    public final CompletableFuture<Integer> updateAsync(List<Pair<String, Object>> data) {
-        return CompletableFuture.supplyAsync(() -> {
-            QueryEventManager.callEvents(QueryEvent.Type.PRE_UPDATE, this);
-            List<Object> bindings = this.bindings.computeIfAbsent("update", a -> new ArrayList<>());
-            bindings.addAll(data.stream().map(Pair::getSecond).collect(Collectors.toList()));
-            String query = this.grammar.compileUpdate(this,
-                data.stream().map(Pair::getFirst).toArray(String[]::new));
-            try (Connection c = connectionFactory.getConnection();
-                PreparedStatement ps = c.prepareStatement(query)) {
-                grammar.bind(this, ps);
-                log.trace("Executing UPDATE: {}", ps);
-                QueryEventManager.callEvents(QueryEvent.Type.POST_UPDATE, this);
-                return ps.executeUpdate();
-            } catch (SQLException e) {
-                throw new CompletionException(e);
-            }
-        }, threadPool);
+    /**
+     * Reads a page of the query's rows async
+     *
+     * @param size The number of rows in the page
+     *
+     * @return A completable future completed with the page
+     *
+     * @see #page(int)
+     */
+    public CompletableFuture<Page<DbRow>> pageAsync(int size) {
+        return pageAsync(size, row -> row);
     }
 
-    public CompletableFuture<Boolean> deleteAsync() {
-        return CompletableFuture.supplyAsync(() -> {
-            if (QueryEventManager.callEvents(QueryEvent.Type.PRE_DELETE, this)) {
-                return true;
-            }
-            String query = this.grammar.compileDelete(this);
-            try (Connection c = connectionFactory.getConnection(); PreparedStatement ps = c
-                .prepareStatement(query)) {
-                grammar.bind(this, ps);
+    /**
+     * Reads a page of the query's rows async, converting each row
+     *
+     * @param size   The number of rows in the page
+     * @param mapper The function converting the returned rows
+     *
+     * @return A completable future completed with the page
+     *
+     * @see #page(int)
+     */
+    protected <R> CompletableFuture<Page<R>> pageAsync(int size, Function<DbRow, R> mapper) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+        if (orders.isEmpty()) {
+            throw new IllegalStateException("The query must be ordered to be paginated");
+        }
+        // One extra row is read to find out if there is a next page. The query's own limit is
+        // restored once the page was read, so it is not left limited to the page
+        Long previousLimit = limit;
+        limit(size + 1);
+        CompletableFuture<List<DbRow>> future;
+        try {
+            future = queryAsync();
+        } catch (RuntimeException e) {
+            limit = previousLimit;
+            throw e;
+        }
+        return future.whenComplete((rows, e) -> limit = previousLimit).thenApply(rows -> {
+            String cursor = null;
+            if (rows.size() > size) {
+                rows = rows.subList(0, size);
+                cursor = PageCursor.encode(orders, rows.get(size - 1));
+            }
+            List<R> items = new ArrayList<>(rows.size());
+            for (DbRow row : rows) {
+                R item = mapper.apply(row);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            return new Page<>(items, cursor);
+        });
+    }
+
+    public CompletableFuture<List<DbRow>> queryAsync() {
+        int chunked = findChunkableWhere();
+        if (chunked != -1) {
+            return queryChunked(chunked);
+        }
+        return supplyAsync(() -> {
+            QueryEventManager.callEvents(QueryEvent.Type.PRE_GET, this);
+            List<DbRow> rows = select();
+            QueryEventManager.callEvents(QueryEvent.Type.POST_GET, this);
+            return rows;
+        });
+    }
+
+    /**
+     * Executes the query and reads its rows one at a time as the returned stream is consumed,
+     * instead of reading every row into memory. The connection stays open until every row was
+     * read or the stream is closed, so the stream should be closed with try-with-resources.
+     * Unlike {@link #query()}, errors are thrown as {@link IllegalStateException}
+     * <br>
+     * In a transaction, databases that cannot run other statements on the connection of a
+     * streaming cursor (such as MySQL) read every row into memory when the query is executed
+     * instead, so that the transaction's connection stays usable while the stream is consumed
+     *
+     * @return The stream of rows
+     */
+    public Stream<DbRow> cursor() {
+        return cursor(row -> row);
+    }
+
+    /**
+     * Executes the query and reads its rows one at a time, converting each row
+     *
+     * @param mapper The function converting the rows. Rows converted to null are skipped
+     *
+     * @return The stream of converted rows
+     *
+     * @see #cursor()
+     */
+    protected <R> Stream<R> cursor(Function<DbRow, R> mapper) {
+        QueryEventManager.callEvents(QueryEvent.Type.PRE_GET, this);
+        String query = this.grammar.compileSelect(this);
+        Connection c = openConnection(StatementType.READ);
+        TemporaryTable.Scope tables = null;
+        PreparedStatement ps = null;
+        boolean commit = false;
+        try {
+            if (grammar.isCursorTransactional() && c.getAutoCommit()) {
+                c.setAutoCommit(false);
+                commit = true;
+            }
+            tables = createTemporaryTables(c);
+            // Cursor statements are not cached, so their fetch size never leaks to other queries
+            ps = c.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+            // A streaming cursor would hold the transaction's only connection until it is closed
+            boolean buffered = transaction != null && transaction.isActive()
+                && grammar.isCursorExclusive();
+            ps.setFetchSize(buffered ? 0 : grammar.getCursorFetchSize());
+            grammar.bind(this, ps);
+            log.trace("Executing SELECT with a cursor: {}", ps);
+            ResultSet rs;
+            try (QueryFuture.Registration registration = track(ps)) {
+                rs = ps.executeQuery();
+            }
+            Cursor cursor = new Cursor(this, c, tables, ps, rs, commit);
+            return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close).map(mapper).filter(Objects::nonNull);
+        } catch (SQLException | RuntimeException e) {
+            try (Connection con = c;
+                TemporaryTable.Scope scope = tables;
+                PreparedStatement statement = ps) {
+                if (commit) {
+                    con.rollback();
+                    con.setAutoCommit(true);
+                }
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new IllegalStateException("Could not execute the query", e);
+        }
+    }
+
+    /**
+     * Executes the query as a select
+     *
+     * @return The returned rows
+     */
+    private List<DbRow> select() {
+        String query = this.grammar.compileSelect(this);
+        try (Connection c = openConnection(StatementType.READ);
+            TemporaryTable.Scope tables = createTemporaryTables(c);
+            PreparedStatement ps = c.prepareStatement(query);
+            QueryFuture.Registration registration = track(ps)) {
+            grammar.bind(this, ps);
+            log.trace("Executing SELECT: {}", ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                return parse(rs);
+            }
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Executes the query as one select per chunk of a large {@code WHERE IN} list, run in
+     * parallel, and merges their rows. Cancelling the returned future cancels every chunk
+     *
+     * @param index The index of the where clause with the large list
+     *
+     * @return A completable future completed with the rows of every chunk
+     */
+    private CompletableFuture<List<DbRow>> queryChunked(int index) {
+        QueryEventManager.callEvents(QueryEvent.Type.PRE_GET, this);
+        WhereElement where = wheres.get(index);
+        // Values in more than one chunk would return their rows more than once
+        Object[] values = new LinkedHashSet<>(Arrays.asList((Object[]) where.get("values")))
+            .toArray();
+        int chunkSize = inListChunkSize;
+        log.debug("Splitting a select on {} values of {} into chunks of {}", values.length,
+            where.getColumn(), chunkSize);
+        List<CompletableFuture<List<DbRow>>> chunks = new ArrayList<>();
+        for (int start = 0; start < values.length; start += chunkSize) {
+            Object[] chunk = padInList(
+                Arrays.copyOfRange(values, start, Math.min(values.length, start + chunkSize)));
+            List<WhereElement> chunkWheres = new ArrayList<>(wheres);
+            chunkWheres.set(index, new WhereElement(Type.IN, where.getColumn(), where.getBool(),
+                new Pair<>("values", chunk)));
+            QueryBuilder query = copyWithWheres(chunkWheres);
+            chunks.add(query.supplyAsync(query::select));
+        }
+        CompletableFuture<List<DbRow>> result = CompletableFuture
+            .allOf(chunks.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<DbRow> rows = new ArrayList<>();
+                chunks.forEach(chunk -> rows.addAll(chunk.join()));
+                QueryEventManager.callEvents(QueryEvent.Type.POST_GET, this);
+                return rows;
+            });
+        result.whenComplete((rows, e) -> {
+            if (result.isCancelled()) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Finds a {@code WHERE IN} clause with more values than the chunk size, when the select can be
+     * split on it without changing its result: every clause is joined with AND, and the select
+     * is not limited, offset, ordered, distinct, aggregated or grouped
+     *
+     * @return The index of the where clause, or -1 if the select should not be split
+     */
+    private int findChunkableWhere() {
+        int chunkSize = inListChunkSize;
+        if (chunkSize <= 0 || limit != null || offset != null || !orders.isEmpty() || distinct
+            || !aggregates.isEmpty() || !groups.isEmpty()) {
+            return -1;
+        }
+        int found = -1;
+        for (int i = 0; i < wheres.size(); i++) {
+            WhereElement where = wheres.get(i);
+            if (i > 0 && !where.getBool().equalsIgnoreCase("AND")) {
+                return -1;
+            }
+            if (found == -1 && where.getType() == Type.IN
+                && ((Object[]) where.get("values")).length > chunkSize
+                && !hasParameter((Object[]) where.get("values"))) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Copies the query with a different set of where clauses
+     *
+     * @param wheres The where clauses of the copy
+     *
+     * @return The copy
+     */
+    private QueryBuilder copyWithWheres(List<WhereElement> wheres) {
+        QueryBuilder copy = new QueryBuilder(grammar);
+        copy.connectionFactory = connectionFactory;
+        copy.table = table;
+        copy.columns = new ArrayList<>(columns);
+        copy.aggregates = new ArrayList<>(aggregates);
+        copy.groups = new ArrayList<>(groups);
+        copy.havings = new ArrayList<>(havings);
+        copy.orders = new ArrayList<>(orders);
+        copy.joins = new ArrayList<>(joins);
+        copy.limit = limit;
+        copy.offset = offset;
+        copy.distinct = distinct;
+        copy.timeout = timeout;
+        copy.priority = priority;
+        copy.generatedKey = generatedKey;
+        copy.temporaryTableThreshold = temporaryTableThreshold;
+        copy.temporaryTables = new ArrayList<>(temporaryTables);
+        copy.wheres = new ArrayList<>(wheres);
+        for (WhereElement where : wheres) {
+            switch (where.getType()) {
+                case BASIC:
+                    copy.addBinding(Section.WHERE, where.get("value"));
+                    break;
+                case IN:
+                case NOT_IN:
+                    for (Object value : (Object[]) where.get("values")) {
+                        copy.addBinding(Section.WHERE, value);
+                    }
+                    break;
+                case SUB:
+                case NOT_SUB:
+                    copy.bindings
+                        .addAll(Section.WHERE, ((QueryBuilder) where.get("query")).getBindings());
+                    break;
+                case SEEK:
+                    for (Object value : (Object[]) where.get("bindings")) {
+                        copy.addBinding(Section.SEEK, value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (WhereElement having : havings) {
+            copy.addBinding(Section.HAVING, having.get("value"));
+        }
+        return copy;
+    }
+
+    /**
+     * Pads a {@code WHERE IN} list to the next power of two by repeating its last value, if
+     * padding is enabled and the list is not too large
+     *
+     * @param values The values
+     *
+     * @return The padded values
+     */
+    private static Object[] padInList(Object[] values) {
+        int length = values.length;
+        if (!inListPadding || length == 0 || length > maxPaddedInList
+            || hasParameter(values)) {
+            return values;
+        }
+        int bucket = Integer.highestOneBit(length);
+        if (bucket == length) {
+            return values;
+        }
+        Object[] padded = Arrays.copyOf(values, bucket << 1);
+        Arrays.fill(padded, length, padded.length, values[length - 1]);
+        return padded;
+    }
+
+    /**
+     * Checks if a list contains a placeholder of a prepared query. The shape of prepared queries
+     * is fixed, so their lists are never padded or split
+     *
+     * @param values The values
+     *
+     * @return True if any value is a placeholder
+     */
+    private static boolean hasParameter(Object[] values) {
+        for (Object value : values) {
+            if (value instanceof QueryParameter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public final CompletableFuture<Integer> updateAsync(List<Pair<String, Object>> data) {
+        return supplyAsync(() -> {
+            QueryEventManager.callEvents(QueryEvent.Type.PRE_UPDATE, this);
+            data.forEach(pair -> addBinding(Section.UPDATE, pair.getSecond()));
+            String query = this.grammar.compileUpdate(this,
+                data.stream().map(Pair::getFirst).toArray(String[]::new));
+            try (Connection c = openConnection(StatementType.WRITE);
+                TemporaryTable.Scope tables = createTemporaryTables(c);
+                PreparedStatement ps = c.prepareStatement(query);
+                QueryFuture.Registration registration = track(ps)) {
+                grammar.bind(this, ps);
+                log.trace("Executing UPDATE: {}", ps);
+                QueryEventManager.callEvents(QueryEvent.Type.POST_UPDATE, this);
+                return ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteAsync() {
+        return supplyAsync(() -> {
+            if (QueryEventManager.callEvents(QueryEvent.Type.PRE_DELETE, this)) {
+                return true;
+            }
+            String query = this.grammar.compileDelete(this);
+            try (Connection c = openConnection(StatementType.WRITE);
+                TemporaryTable.Scope tables = createTemporaryTables(c);
+                PreparedStatement ps = c.prepareStatement(query);
+                QueryFuture.Registration registration = track(ps)) {
+                grammar.bind(this, ps);
                 log.trace("Executing DELETE: {}", ps);
                 boolean success = ps.executeUpdate() > 0;
                 QueryEventManager.callEvents(QueryEvent.Type.POST_DELETE, this);
@@ -450,7 +1200,7 @@ public class QueryBuilder {
                 log.error("Error when deleting", e);
                 throw new CompletionException(e);
             }
-        }, threadPool);
+        });
     }
 
 
@@ -469,13 +1219,14 @@ public class QueryBuilder {
         if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
             return CompletableFuture.completedFuture(null);
         }
-        return CompletableFuture.supplyAsync(() -> {
-            data.stream().map(Pair::getSecond).forEach(d -> addBinding("insert", d));
+        return supplyAsync(() -> {
+            data.forEach(pair -> addBinding(Section.INSERT, pair.getSecond()));
             String query = this.grammar
                 .compileInsert(this,
                     data.stream().map(Pair::getFirst).toArray(String[]::new));
-            try (Connection con = connectionFactory.getConnection();
-                PreparedStatement ps = con.prepareStatement(query)) {
+            try (Connection con = openConnection(StatementType.WRITE);
+                PreparedStatement ps = con.prepareStatement(query);
+                QueryFuture.Registration registration = track(ps)) {
                 this.grammar.bind(this, ps);
                 log.trace("Executing INSERT: {}", ps);
                 ps.executeUpdate();
@@ -491,14 +1242,25 @@ public class QueryBuilder {
         if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
             return CompletableFuture.completedFuture(0L);
         }
-        return CompletableFuture.supplyAsync(() -> {
-            data.stream().map(Pair::getSecond).forEach(d -> addBinding("insert", d));
-            String query = this.grammar
-                .compileInsert(this,
-                    data.stream().map(Pair::getFirst).toArray(String[]::new));
-            try (Connection con = connectionFactory.getConnection();
+        return supplyAsync(() -> {
+            data.forEach(pair -> addBinding(Section.INSERT, pair.getSecond()));
+            String[] columns = data.stream().map(Pair::getFirst).toArray(String[]::new);
+            String returning = this.grammar
+                .compileInsertReturning(this, 1, generatedKey, columns);
+            if (returning != null) {
+                try (Connection con = openConnection(StatementType.WRITE)) {
+                    List<Long> keys = insertReturning(con, returning);
+                    QueryEventManager.callEvents(QueryEvent.Type.POST_CREATE, this);
+                    return keys.isEmpty() ? -1L : keys.get(0);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }
+            String query = this.grammar.compileInsert(this, columns);
+            try (Connection con = openConnection(StatementType.WRITE);
                 PreparedStatement ps = con
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+                QueryFuture.Registration registration = track(ps)) {
                 this.grammar.bind(this, ps);
                 log.trace("Executing INSERT (with generated): " + ps);
                 ps.executeUpdate();
@@ -514,23 +1276,221 @@ public class QueryBuilder {
                 throw new CompletionException(e);
             }
             return -1L;
-        }, threadPool);
+        });
     }
 
+    /**
+     * Inserts rows in bulk. Large inserts are split into chunks below the database's placeholder
+     * limit and {@link #getMaxBulkInsertBytes()}, sent as JDBC batches on one connection in a
+     * single transaction, or spread over several connections with
+     * {@link #insertParallelism(int)}
+     *
+     * @param data The rows, each with the same columns
+     *
+     * @return A completable future completed with the number of inserted rows
+     */
     public final CompletableFuture<Integer> insertBulk(List<Map<String, Object>> data) {
-        return insertBulk(data, false).thenApply(List::size);
+        return insertBulk(data, false).thenApply(insert -> insert != null ? data.size() : 0);
     }
 
+    /**
+     * Inserts rows in bulk, returning the keys generated for them
+     *
+     * @param data The rows, each with the same columns
+     *
+     * @return A completable future completed with the generated keys, in the order of the rows
+     *
+     * @see #insertBulk(List)
+     */
     public final CompletableFuture<List<Long>> insertBulkWithGenerated(
         List<Map<String, Object>> data) {
-        return insertBulk(data, true);
+        return insertBulk(data, true)
+            .thenApply(insert -> insert != null ? insert.getKeys() : Collections.emptyList());
+    }
+
+    /**
+     * Loads rows in bulk by streaming them to the database as tab-separated text, which is much
+     * faster than inserting them for very large numbers of rows. The columns are taken from the
+     * first row. MySQL loads the rows with {@code LOAD DATA LOCAL INFILE}, which the driver must
+     * allow with {@code allowLoadLocalInfile=true}
+     * <br>
+     * Local loads skip rows the server rejects, such as rows duplicating a key, with a warning.
+     * The load fails instead if any row was skipped or the server reported a warning, and is rolled
+     * back along with the transaction it runs in
+     *
+     * @param data The rows, each with the same columns
+     *
+     * @return A completable future completed with the number of loaded rows, which is the number
+     * of rows given
+     */
+    public final CompletableFuture<Integer> loadBulk(List<Map<String, Object>> data) {
+        if (data.size() == 0) {
+            throw new IllegalArgumentException("Can't load nothing");
+        }
+        Set<String> columnSet = data.get(0).keySet();
+        for (Map<String, Object> d : data) {
+            if (!d.keySet().equals(columnSet)) {
+                throw new IllegalArgumentException(
+                    "Inconsistent columns. Expected " + columnSet + " got " + d.keySet());
+            }
+        }
+        return loadBulk(data.iterator());
+    }
+
+    /**
+     * Loads rows in bulk as they are read from an iterator, without holding them all in memory.
+     * The iterator is read on the thread executing the load. The load is rolled back if a row has
+     * different columns than the first, or a row was skipped
+     *
+     * @param rows The rows, each with the same columns
+     *
+     * @return A completable future completed with the number of loaded rows
+     *
+     * @see #loadBulk(List)
+     */
+    public final CompletableFuture<Integer> loadBulk(Iterator<Map<String, Object>> rows) {
+        if (!rows.hasNext()) {
+            throw new IllegalArgumentException("Can't load nothing");
+        }
+        Map<String, Object> first = rows.next();
+        String[] columns = first.keySet().toArray(new String[0]);
+        if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return supplyAsync(() -> {
+            // Compiled in the future, so a grammar without bulk loads fails it instead of throwing
+            String query = grammar.compileLoadData(this, columns);
+            LoadDataStream stream = new LoadDataStream(first, columns, rows);
+            int loaded;
+            try (Connection con = openConnection(StatementType.WRITE)) {
+                // The server keeps the rows read before a failure unless the load is rolled back
+                boolean commit = con.getAutoCommit();
+                if (commit) {
+                    con.setAutoCommit(false);
+                }
+                try (Statement statement = con.createStatement();
+                    QueryFuture.Registration registration = track(statement)) {
+                    setLocalInfileInputStream(statement, stream);
+                    log.trace("Executing LOAD DATA: {}", query);
+                    loaded = statement.executeUpdate(query);
+                    // Local loads skip rows that duplicate a key or cannot be converted, reporting
+                    // them as warnings instead of failing
+                    SQLWarning warning = statement.getWarnings();
+                    if (loaded != stream.getRowCount() || warning != null) {
+                        throw new SQLException(
+                            "Loaded " + loaded + " of " + stream.getRowCount() + " rows", warning);
+                    }
+                    if (commit) {
+                        con.commit();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    if (commit) {
+                        con.rollback();
+                    }
+                    throw e;
+                } finally {
+                    if (commit) {
+                        con.setAutoCommit(true);
+                    }
+                }
+            } catch (SQLException e) {
+                log.error("Error when loading bulk", e);
+                throw new CompletionException(e);
+            }
+            log.debug("Loaded {} of {} streamed rows", loaded, stream.getRowCount());
+            QueryEventManager.callEvents(QueryEvent.Type.POST_CREATE, this);
+            return loaded;
+        });
+    }
+
+    /**
+     * Inserts rows, updating the existing row instead when an inserted row conflicts with it on a
+     * unique key. The rows are split into statements like {@link #insertBulk(List)}, executed on a
+     * single connection. Outside of a transaction, rows split into several statements are upserted
+     * in a transaction of their own, so a failed statement rolls back the statements before it
+     *
+     * @param rows          The rows, each with the same columns
+     * @param uniqueBy      The columns of the unique key rows conflict on
+     * @param updateColumns The columns updated on existing rows, or none to leave them unchanged
+     *
+     * @return A completable future completed with the number of affected rows reported by the
+     * database
+     */
+    public final CompletableFuture<Integer> upsertBulk(List<Map<String, Object>> rows,
+        List<String> uniqueBy, List<String> updateColumns) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Can't upsert nothing");
+        }
+        if (uniqueBy.isEmpty()) {
+            throw new IllegalArgumentException("The unique columns of the rows must be given");
+        }
+        Set<String> columnSet = rows.get(0).keySet();
+        for (Map<String, Object> row : rows) {
+            if (!row.keySet().equals(columnSet)) {
+                throw new IllegalArgumentException(
+                    "Inconsistent columns. Expected " + columnSet + " got " + row.keySet());
+            }
+        }
+        String[] columns = columnSet.toArray(new String[0]);
+        String[] unique = uniqueBy.toArray(new String[0]);
+        String[] update = updateColumns.toArray(new String[0]);
+        if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return supplyAsync(() -> {
+            int perStatement = BulkInsert.chunkSize(rows, columns);
+            int affected = 0;
+            try (Connection con = openConnection(StatementType.WRITE)) {
+                // Statements after the first are applied together or not at all, like bulk inserts
+                boolean commit = con.getAutoCommit() && rows.size() > perStatement;
+                if (commit) {
+                    con.setAutoCommit(false);
+                }
+                try {
+                    for (int start = 0; start < rows.size(); start += perStatement) {
+                        int count = Math.min(perStatement, rows.size() - start);
+                        String query = grammar.compileUpsert(this, count, columns, unique, update);
+                        try (PreparedStatement ps = con.prepareStatement(query);
+                            QueryFuture.Registration registration = track(ps)) {
+                            int index = 1;
+                            for (Map<String, Object> row : rows.subList(start, start + count)) {
+                                for (String column : columns) {
+                                    ParameterBinder.bind(ps, index++, row.get(column));
+                                }
+                            }
+                            log.trace("Executing UPSERT: {}", ps);
+                            affected += ps.executeUpdate();
+                        }
+                    }
+                    if (commit) {
+                        con.commit();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    if (commit) {
+                        con.rollback();
+                    }
+                    throw e;
+                } finally {
+                    if (commit) {
+                        con.setAutoCommit(true);
+                    }
+                }
+            } catch (SQLException e) {
+                log.error("Error when upserting bulk", e);
+                throw new CompletionException(e);
+            }
+            QueryEventManager.callEvents(QueryEvent.Type.POST_CREATE, this);
+            return affected;
+        });
     }
 
     public final CompletableFuture<Boolean> existsAsync() {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             String query = grammar.compileExists(this);
-            try (Connection con = connectionFactory.getConnection();
-                PreparedStatement ps = con.prepareStatement(query)) {
+            try (Connection con = openConnection(StatementType.READ);
+                TemporaryTable.Scope tables = createTemporaryTables(con);
+                PreparedStatement ps = con.prepareStatement(query);
+                QueryFuture.Registration registration = track(ps)) {
                 grammar.bind(this, ps);
                 log.trace("Executing exists: {}", ps);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -542,7 +1502,7 @@ public class QueryBuilder {
                 throw new CompletionException(e);
             }
             return false;
-        }, threadPool);
+        });
     }
 
     public final boolean exists() {
@@ -556,6 +1516,141 @@ public class QueryBuilder {
         return false;
     }
 
+    /**
+     * Counts the rows matching the query. Distinct queries selecting a single column count its
+     * distinct values
+     *
+     * @return The number of rows
+     */
+    public long count() {
+        try {
+            return countAsync().get();
+        } catch (InterruptedException e) {
+            // Ignored
+        } catch (ExecutionException e) {
+            log.error("Could not execute count query", e);
+        }
+        return 0;
+    }
+
+    public CompletableFuture<Long> countAsync() {
+        AggregateElement count;
+        if (!distinct) {
+            count = new AggregateElement(AggregateElement.Type.COUNT, null, null);
+        } else if (columns.size() == 1) {
+            count = new AggregateElement(AggregateElement.Type.COUNT, columns.get(0), null, true);
+        } else {
+            throw new IllegalStateException(
+                "Distinct queries can only be counted when they select a single column");
+        }
+        return aggregateAsync(count).thenApply(n -> n != null ? ((Number) n).longValue() : 0L);
+    }
+
+    /**
+     * Sums a column over the rows matching the query
+     *
+     * @param column The column
+     *
+     * @return The sum, or null if no rows matched
+     */
+    public Number sum(String column) {
+        return aggregate(AggregateElement.Type.SUM, column);
+    }
+
+    public CompletableFuture<Number> sumAsync(String column) {
+        return aggregateAsync(new AggregateElement(AggregateElement.Type.SUM, column, null))
+            .thenApply(n -> (Number) n);
+    }
+
+    /**
+     * Averages a column over the rows matching the query
+     *
+     * @param column The column
+     *
+     * @return The average, or null if no rows matched
+     */
+    public Number avg(String column) {
+        return aggregate(AggregateElement.Type.AVG, column);
+    }
+
+    public CompletableFuture<Number> avgAsync(String column) {
+        return aggregateAsync(new AggregateElement(AggregateElement.Type.AVG, column, null))
+            .thenApply(n -> (Number) n);
+    }
+
+    /**
+     * Gets the smallest value of a column in the rows matching the query
+     *
+     * @param column The column
+     *
+     * @return The smallest value, or null if no rows matched
+     */
+    public <T> T min(String column) {
+        return aggregate(AggregateElement.Type.MIN, column);
+    }
+
+    public <T> CompletableFuture<T> minAsync(String column) {
+        return aggregateAsync(new AggregateElement(AggregateElement.Type.MIN, column, null))
+            .thenApply(value -> (T) value);
+    }
+
+    /**
+     * Gets the largest value of a column in the rows matching the query
+     *
+     * @param column The column
+     *
+     * @return The largest value, or null if no rows matched
+     */
+    public <T> T max(String column) {
+        return aggregate(AggregateElement.Type.MAX, column);
+    }
+
+    public <T> CompletableFuture<T> maxAsync(String column) {
+        return aggregateAsync(new AggregateElement(AggregateElement.Type.MAX, column, null))
+            .thenApply(value -> (T) value);
+    }
+
+    private <T> T aggregate(AggregateElement.Type type, String column) {
+        try {
+            return (T) aggregateAsync(new AggregateElement(type, column, null)).get();
+        } catch (InterruptedException e) {
+            // Ignored
+        } catch (ExecutionException e) {
+            log.error("Could not execute {} query", type, e);
+        }
+        return null;
+    }
+
+    /**
+     * Computes an aggregate over the rows matching the query in the database, without returning
+     * the rows. A limited or offset query is aggregated over the rows it would return
+     *
+     * @param aggregate The aggregate
+     *
+     * @return A completable future completed with the aggregate, or null if no rows matched
+     */
+    protected CompletableFuture<Object> aggregateAsync(AggregateElement aggregate) {
+        if (!groups.isEmpty()) {
+            throw new IllegalStateException(
+                "Grouped queries have an aggregate per group, select them with selectAggregate");
+        }
+        return supplyAsync(() -> {
+            String query = grammar.compileAggregate(this, aggregate);
+            try (Connection con = openConnection(StatementType.READ);
+                TemporaryTable.Scope tables = createTemporaryTables(con);
+                PreparedStatement ps = con.prepareStatement(query);
+                QueryFuture.Registration registration = track(ps)) {
+                grammar.bind(this, ps);
+                log.trace("Executing {}: {}", aggregate.getType(), ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getObject(1) : null;
+                }
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
     public final void registerListener(QueryEvent.Type type, QueryEventListener listener) {
         this.eventListeners.computeIfAbsent(type, t -> new ArrayList<>()).add(listener);
     }
@@ -574,12 +1669,13 @@ public class QueryBuilder {
      */
     public CompletableFuture<List<DbRow>> rawAsync(@Language("SQL") String sql,
         Object... bindings) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection con = connectionFactory.getConnection();
-                PreparedStatement statement = con.prepareStatement(sql)) {
+        return supplyAsync(() -> {
+            try (Connection con = openConnection(StatementType.READ);
+                PreparedStatement statement = con.prepareStatement(sql);
+                QueryFuture.Registration registration = track(statement)) {
                 int index = 1;
                 for (Object o : bindings) {
-                    statement.setObject(index++, o);
+                    ParameterBinder.bind(statement, index++, o);
                 }
                 log.trace("Executing query: {}", statement);
                 try (ResultSet rs = statement.executeQuery()) {
@@ -610,58 +1706,271 @@ public class QueryBuilder {
         return new ArrayList<>();
     }
 
-    private CompletableFuture<List<Long>> insertBulk(List<Map<String, Object>> data,
+    /**
+     * Inserts rows in chunks sized to fit in a single statement, spread over the builder's
+     * insert parallelism
+     *
+     * @param data      The rows
+     * @param generated If the keys generated for the rows should be returned
+     *
+     * @return A completable future completed with the bulk insert, or null if it was cancelled by
+     * a listener
+     */
+    private CompletableFuture<BulkInsert> insertBulk(List<Map<String, Object>> data,
         boolean generated) {
         if (data.size() == 0) {
             throw new IllegalArgumentException("Can't insert nothing");
         }
-        return CompletableFuture.supplyAsync(() -> {
-            int colCount = data.get(0).size();
-            for (Map<String, Object> d : data) {
-                if (d.size() != colCount) {
-                    throw new IllegalArgumentException(
-                        "Inconsistent column count. Expected " + colCount + " got " + d.size());
+        Set<String> columnSet = data.get(0).keySet();
+        for (Map<String, Object> d : data) {
+            if (!d.keySet().equals(columnSet)) {
+                throw new IllegalArgumentException(
+                    "Inconsistent columns. Expected " + columnSet + " got " + d.keySet());
+            }
+        }
+        if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        BulkInsert insert = new BulkInsert(this, data, columnSet.toArray(new String[0]),
+            generated, insertProgressListener);
+        int chunks = insert.getChunkCount();
+        // A transaction has a single connection, so its chunks are never inserted in parallel
+        int workers = transaction != null && transaction.isActive() ? 1
+            : Math.min(insertParallelism, chunks);
+        log.debug("Inserting {} rows in {} chunks on {} connections", data.size(), chunks,
+            workers);
+        List<CompletableFuture<Integer>> parts = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            int first = chunks * worker / workers;
+            int last = chunks * (worker + 1) / workers;
+            parts.add(supplyAsync(() -> insert.run(first, last)));
+        }
+        CompletableFuture<BulkInsert> result = CompletableFuture
+            .allOf(parts.toArray(new CompletableFuture[0])).thenApply(v -> {
+                QueryEventManager.callEvents(QueryEvent.Type.POST_CREATE, this);
+                return insert;
+            });
+        result.whenComplete((i, e) -> {
+            if (result.isCancelled()) {
+                parts.forEach(part -> part.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Executes an insert that returns the generated keys as its result set
+     *
+     * @param con The connection to execute the insert on
+     * @param sql The insert
+     *
+     * @return The generated keys, in the order the rows were inserted
+     *
+     * @throws SQLException If the insert failed
+     */
+    private List<Long> insertReturning(Connection con, String sql) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql);
+            QueryFuture.Registration registration = track(ps)) {
+            this.grammar.bind(this, ps);
+            log.trace("Executing INSERT (returning {}): {}", generatedKey, ps);
+            List<Long> keys = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(rs.getLong(1));
                 }
             }
-            if (QueryEventManager.callEvents(QueryEvent.Type.PRE_CREATE, this)) {
-                return Collections.emptyList();
+            return keys;
+        }
+    }
+
+    /**
+     * Compiles the query into an immutable template that can be executed many times with
+     * different values for its placeholders. Values in the query are bound to every execution,
+     * placeholders created with {@link #param()} or {@link #param(String)} are bound to the
+     * arguments of the execution.
+     * <br>
+     * Executions use the builder's connection factory, timeout and priority, and the transaction
+     * running on the executing thread. Event listeners are not called
+     *
+     * @return The prepared query
+     */
+    public PreparedQuery<DbRow> prepare() {
+        return prepare(row -> row);
+    }
+
+    /**
+     * Compiles the query into an immutable template, converting each returned row
+     *
+     * @param mapper The function converting the returned rows
+     *
+     * @return The prepared query
+     *
+     * @see #prepare()
+     */
+    protected <R> PreparedQuery<R> prepare(Function<DbRow, R> mapper) {
+        if (!temporaryTables.isEmpty()) {
+            throw new IllegalStateException("Queries using temporary tables cannot be prepared");
+        }
+        String sql = grammar.compileSelect(this);
+        return new PreparedQuery<>(sql, getBindings().toArray(), connectionFactory,
+            timeout, priority, mapper);
+    }
+
+    /**
+     * Gets a connection to run a statement on. If the builder was created in a transaction, the
+     * transaction's connection is used
+     *
+     * @param type The type of statement that will be executed
+     *
+     * @return The connection
+     */
+    private Connection openConnection(StatementType type) {
+        return openConnection(transaction, connectionFactory, type);
+    }
+
+    /**
+     * Gets a connection to run a statement on
+     *
+     * @param transaction The transaction the statement runs in, or null
+     * @param factory     The factory to get the connection from if there is no transaction
+     * @param type        The type of statement that will be executed
+     *
+     * @return The connection
+     */
+    static Connection openConnection(Transaction transaction, ConnectionFactory factory,
+        StatementType type) {
+        if (transaction != null && transaction.isActive()) {
+            return transaction.getConnection();
+        }
+        return factory.getConnection(type);
+    }
+
+    /**
+     * Creates and fills the query's temporary tables on the connection the query will execute on
+     *
+     * @param connection The connection
+     *
+     * @return The scope of the tables, to be closed after the query has executed
+     *
+     * @throws SQLException If a table could not be created
+     */
+    private TemporaryTable.Scope createTemporaryTables(Connection connection)
+        throws SQLException {
+        return TemporaryTable.create(connection, grammar, temporaryTables,
+            timeout != null ? timeout : defaultTimeout);
+    }
+
+    /**
+     * Applies the query's timeout to the statement and attaches it to the query's future so that
+     * cancelling the future cancels the statement
+     *
+     * @param statement The statement about to be executed
+     *
+     * @return The registration, to be closed before the statement is
+     *
+     * @throws SQLException If the timeout could not be set
+     */
+    private QueryFuture.Registration track(Statement statement) throws SQLException {
+        return track(statement, timeout != null ? timeout : defaultTimeout);
+    }
+
+    /**
+     * Applies a timeout to the statement and attaches it to the future of the query running on the
+     * current thread
+     *
+     * @param statement The statement about to be executed
+     * @param timeout   The timeout, or null if the statement should not time out
+     *
+     * @return The registration, to be closed before the statement is
+     *
+     * @throws SQLException If the timeout could not be set
+     */
+    static QueryFuture.Registration track(Statement statement, Duration timeout)
+        throws SQLException {
+        // Statements are cached per connection, so the timeout is always set to clear a previous one
+        int seconds = 0;
+        if (timeout != null && !timeout.isZero()) {
+            seconds = (int) Math.min(Integer.MAX_VALUE, (timeout.toMillis() + 999) / 1000);
+        }
+        statement.setQueryTimeout(seconds);
+        return QueryFuture.attach(statement);
+    }
+
+    /**
+     * Streams the rows of a {@code LOAD DATA LOCAL INFILE} statement from memory instead of a
+     * file. The driver's method is looked up reflectively, so no driver is needed to compile
+     *
+     * @param statement The statement that will execute the load
+     * @param stream    The rows
+     *
+     * @throws SQLException If the statement could not be unwrapped
+     */
+    private static void setLocalInfileInputStream(Statement statement, InputStream stream)
+        throws SQLException {
+        for (String name : LOCAL_INFILE_STATEMENTS) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(name, false, statement.getClass().getClassLoader());
+            } catch (ClassNotFoundException e) {
+                continue;
             }
-            data.stream().flatMap(a -> a.entrySet().stream()).map(Entry::getValue)
-                .forEach(d -> addBinding("insert", d));
-            String query = this.grammar.compileInsertMany(this, data.size(),
-                data.get(0).keySet().toArray(new String[0]));
-            try (Connection con = connectionFactory.getConnection();
-                PreparedStatement ps = con.prepareStatement(query,
-                    generated ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS)) {
-                this.grammar.bind(this, ps);
-                log.trace("Executing BULK INSERT (With generated? {}): {}", generated, ps);
-                List<Long> gen = new ArrayList<>();
-                ps.executeUpdate();
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    while (rs.next()) {
-                        gen.add(rs.getLong(1));
-                    }
-                    QueryEventManager.callEvents(QueryEvent.Type.POST_CREATE, this);
-                    return gen;
+            if (statement.isWrapperFor(clazz)) {
+                try {
+                    clazz.getMethod("setLocalInfileInputStream", InputStream.class)
+                        .invoke(statement.unwrap(clazz), stream);
+                    return;
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Could not stream the rows to the driver", e);
                 }
-            } catch (SQLException e) {
-                log.error("Error when inserting bulk", e);
-                throw new CompletionException(e);
             }
-        }, threadPool);
+        }
+        throw new IllegalStateException(
+            "The JDBC driver does not support streaming rows to LOAD DATA LOCAL INFILE");
+    }
 
+    /**
+     * Runs the supplier on the query thread pool. If the builder was created in a transaction, the
+     * supplier is run on the calling thread so the transaction's statements execute in order on
+     * its connection
+     *
+     * @param supplier The supplier to run
+     *
+     * @return A completable future completed with the supplier's result
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return supplyAsync(transaction, priority, supplier);
     }
 
-    private List<DbRow> parse(ResultSet rs) throws SQLException {
+    /**
+     * Runs the supplier on the query thread pool, or on the calling thread if there is an active
+     * transaction
+     *
+     * @param transaction The transaction the supplier runs in, or null
+     * @param priority    The priority to run the supplier with
+     * @param supplier    The supplier to run
+     *
+     * @return A completable future completed with the supplier's result
+     */
+    static <T> CompletableFuture<T> supplyAsync(Transaction transaction, QueryPriority priority,
+        Supplier<T> supplier) {
+        if (transaction == null || !transaction.isActive()) {
+            return executor.submit(supplier, priority);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (RuntimeException e) {
+            transaction.fail(e);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    static List<DbRow> parse(ResultSet rs) throws SQLException {
         ArrayList<DbRow> data = new ArrayList<>();
-        ResultSetMetaData md = rs.getMetaData();
+        RowSchema schema = RowSchema.of(rs.getMetaData());
         while (rs.next()) {
-            DbRow row = new DbRow();
-            for (int i = 1; i <= md.getColumnCount(); i++) {
-                String col = md.getColumnLabel(i);
-                row.put(col, rs.getObject(col));
-            }
-            data.add(row);
+            data.add(schema.read(rs));
         }
         return data;
     }
@@ -0,0 +1,194 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.AdmissionController.OverflowPolicy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the executor that runs async queries
+ *
+ * @see QueryBuilder#configureExecutor(QueryExecutorConfig)
+ */
+@Slf4j
+@Getter
+public class QueryExecutorConfig {
+
+    /**
+     * The number of threads running queries
+     */
+    private int poolSize = 5;
+
+    /**
+     * The maximum number of queries waiting for a thread. Queries submitted while the queue is full
+     * are handled according to the {@link #overflowPolicy}
+     */
+    private int queueSize = Integer.MAX_VALUE;
+
+    /**
+     * What to do with queries submitted while the queue is full
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.FAIL_FAST;
+
+    /**
+     * The maximum amount of time (in ms) to block the caller for with {@link OverflowPolicy#BLOCK}
+     */
+    private long blockTimeout = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The factory used to create the query threads
+     */
+    private ThreadFactory threadFactory = new QueryThreadPoolFactory();
+
+    /**
+     * If every query should be run on its own virtual thread instead of a fixed pool
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * The weights of the priority lanes. Lanes without a weight use the priority's default weight
+     */
+    private final Map<QueryPriority, Integer> weights = new EnumMap<>(QueryPriority.class);
+
+    /**
+     * The maximum number of queries of each priority that can run at once. Lanes without a limit
+     * can use every thread, except {@link QueryPriority#BATCH} which defaults to half of them
+     */
+    private final Map<QueryPriority, Integer> laneLimits = new EnumMap<>(QueryPriority.class);
+
+    public QueryExecutorConfig poolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1");
+        }
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public QueryExecutorConfig queueSize(int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("The queue size must be at least 1");
+        }
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public QueryExecutorConfig overflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public QueryExecutorConfig blockTimeout(long blockTimeout, TimeUnit unit) {
+        this.blockTimeout = unit.toMillis(blockTimeout);
+        return this;
+    }
+
+    public QueryExecutorConfig threadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
+    /**
+     * Sets the weight of a priority lane. When several lanes have queries waiting, each lane gets a
+     * share of the freed threads proportional to its weight
+     *
+     * @param priority The priority of the lane
+     * @param weight   The weight
+     *
+     * @return The config
+     */
+    public QueryExecutorConfig weight(QueryPriority priority, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("The weight must be at least 1");
+        }
+        this.weights.put(priority, weight);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of queries of a priority that can run at once
+     *
+     * @param priority      The priority of the lane
+     * @param maxConcurrent The maximum number of running queries
+     *
+     * @return The config
+     */
+    public QueryExecutorConfig maxConcurrent(QueryPriority priority, int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("The lane concurrency must be at least 1");
+        }
+        this.laneLimits.put(priority, maxConcurrent);
+        return this;
+    }
+
+    /**
+     * Runs every query on its own virtual thread. Virtual threads are only available on Java 21
+     * and newer, on older runtimes the fixed pool is used instead.
+     * <br>
+     * The concurrency of queries is then only limited by the connection factory, so this should
+     * be used together with a {@link com.mrkirby153.bfs.connection.PooledConnectionFactory}
+     *
+     * @param virtualThreads If virtual threads should be used
+     *
+     * @return The config
+     */
+    public QueryExecutorConfig virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Creates an executor with this configuration
+     *
+     * @return The admission controller in front of the executor
+     */
+    AdmissionController build() {
+        if (virtualThreads) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                // Every query gets its own thread, so nothing is ever queued
+                return new AdmissionController(executor, Integer.MAX_VALUE, queueSize,
+                    overflowPolicy, blockTimeout, weights, laneLimits);
+            }
+            log.warn("Virtual threads are not supported by this runtime, using a fixed pool");
+        }
+        // The admission controller never hands the pool more tasks than it has threads
+        ExecutorService executor = new ThreadPoolExecutor(poolSize, poolSize, 0,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        Map<QueryPriority, Integer> limits = new EnumMap<>(laneLimits);
+        limits.putIfAbsent(QueryPriority.BATCH, Math.max(1, poolSize / 2));
+        return new AdmissionController(executor, poolSize, queueSize, overflowPolicy,
+            blockTimeout, weights, limits);
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread. Reflection is used as the
+     * library targets runtimes that predate virtual threads
+     *
+     * @return The executor, or null if virtual threads are not supported
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "bfs-query-virtual-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory")
+                .invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.debug("Could not create a virtual thread executor", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * A future for a query run by the query executor.
+ * <br>
+ * Cancelling the future before the query starts keeps it from running at all. Cancelling it while
+ * the query is running cancels the JDBC statement that is executing, releasing its thread and
+ * connection. Only the future returned by the query builder is able to cancel the query, futures
+ * derived from it (with {@link #thenApply(java.util.function.Function)} for example) are not.
+ */
+@Slf4j
+public class QueryFuture<T> extends CompletableFuture<T> {
+
+    /**
+     * The future of the query running on the current thread
+     */
+    private static final ThreadLocal<QueryFuture<?>> current = new ThreadLocal<>();
+
+    /**
+     * A registration that does nothing, for statements executed outside of a query future
+     */
+    private static final Registration NONE = () -> {
+    };
+
+    /**
+     * The statement currently executing
+     */
+    private Statement statement;
+
+    /**
+     * Attaches the statement to the future of the query running on the current thread, so that
+     * cancelling the future cancels the statement. The statement must be detached by closing the
+     * returned registration before the statement is closed
+     *
+     * @param statement The statement
+     *
+     * @return The registration
+     *
+     * @throws CancellationException If the query has already been cancelled
+     */
+    static Registration attach(Statement statement) {
+        QueryFuture<?> future = current.get();
+        if (future == null) {
+            return NONE;
+        }
+        synchronized (future) {
+            if (future.isCancelled()) {
+                throw new CancellationException("The query was cancelled");
+            }
+            future.statement = statement;
+        }
+        return () -> {
+            synchronized (future) {
+                future.statement = null;
+            }
+        };
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            synchronized (this) {
+                if (statement != null) {
+                    try {
+                        log.debug("Cancelling statement {}", statement);
+                        statement.cancel();
+                    } catch (SQLException e) {
+                        log.warn("Could not cancel the statement", e);
+                    }
+                }
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Runs the query and completes the future with its result. Nothing is run if the future has
+     * already completed
+     *
+     * @param supplier The query
+     */
+    void run(Supplier<T> supplier) {
+        if (isDone()) {
+            return;
+        }
+        current.set(this);
+        try {
+            complete(supplier.get());
+        } catch (Throwable e) {
+            completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+        } finally {
+            current.remove();
+        }
+    }
+
+    /**
+     * The attachment of a statement to a query future
+     */
+    interface Registration extends AutoCloseable {
+
+        /**
+         * Detaches the statement from the future
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Getter;
+
+/**
+ * A placeholder in a query for a value that is provided when the prepared query is executed
+ *
+ * @see QueryBuilder#param()
+ * @see QueryBuilder#param(String)
+ * @see PreparedQuery
+ */
+@Getter
+public final class QueryParameter {
+
+    /**
+     * The name of the placeholder, or null if it is positional
+     */
+    private final String name;
+
+    QueryParameter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Checks if the placeholder is named
+     *
+     * @return True if the placeholder is bound by name, false if it is bound by position
+     */
+    public boolean isNamed() {
+        return name != null;
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? ":" + name : "?";
+    }
+}
@@ -0,0 +1,47 @@
+package com.mrkirby153.bfs.query;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The priority of a query. Each priority is scheduled in its own lane of the query executor, with
+ * lanes sharing the executor's threads according to their weights.
+ *
+ * @see QueryExecutorConfig#weight(QueryPriority, int)
+ * @see QueryExecutorConfig#maxConcurrent(QueryPriority, int)
+ */
+@Getter
+@RequiredArgsConstructor
+public enum QueryPriority {
+    /**
+     * Latency sensitive queries, such as those made while handling a user's request
+     */
+    INTERACTIVE(8),
+
+    /**
+     * Queries that were not given a priority
+     */
+    NORMAL(4),
+
+    /**
+     * Throughput oriented queries, such as backfills and other background jobs
+     */
+    BATCH(1);
+
+    /**
+     * The default share of the executor's threads given to the lane when other lanes have work
+     * waiting
+     */
+    private final int defaultWeight;
+
+    /**
+     * Checks if queries of this priority are more important than queries of another priority
+     *
+     * @param other The other priority
+     *
+     * @return True if this priority is higher
+     */
+    public boolean isHigherThan(QueryPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
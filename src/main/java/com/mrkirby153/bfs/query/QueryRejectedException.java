@@ -0,0 +1,17 @@
+package com.mrkirby153.bfs.query;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a query is not admitted into the query executor
+ *
+ * @see AdmissionController
+ */
+public class QueryRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
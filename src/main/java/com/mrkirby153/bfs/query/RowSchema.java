@@ -0,0 +1,225 @@
+package com.mrkirby153.bfs.query;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns of a result set, shared by every row read from it so that rows only hold their
+ * values. Each label is stored once; when several columns have the same label, the first one is
+ * read.
+ * <br>
+ * Columns the driver returns as {@link Long}, {@link Integer} or {@link Double} are stored in
+ * primitive arrays, so that reading them does not box every value
+ */
+final class RowSchema {
+
+    static final byte OBJECT = 0;
+    static final byte LONG = 1;
+    static final byte INT = 2;
+    static final byte DOUBLE = 3;
+
+    /**
+     * The labels of the columns
+     */
+    private final String[] labels;
+
+    /**
+     * The index of each label's column in the result set, starting at 1
+     */
+    private final int[] columns;
+
+    /**
+     * The slot of each label
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * How the value of each slot is stored
+     */
+    private final byte[] kinds;
+
+    /**
+     * The index of each slot's value in the array of its kind. Longs and ints share an array
+     */
+    private final int[] offsets;
+
+    private final int objectCount;
+    private final int longCount;
+    private final int doubleCount;
+
+    private RowSchema(String[] labels, int[] columns, Map<String, Integer> slots, byte[] kinds) {
+        this.labels = labels;
+        this.columns = columns;
+        this.slots = slots;
+        this.kinds = kinds;
+        this.offsets = new int[kinds.length];
+        int objects = 0;
+        int longs = 0;
+        int doubles = 0;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            switch (kinds[slot]) {
+                case LONG:
+                case INT:
+                    offsets[slot] = longs++;
+                    break;
+                case DOUBLE:
+                    offsets[slot] = doubles++;
+                    break;
+                default:
+                    offsets[slot] = objects++;
+            }
+        }
+        this.objectCount = objects;
+        this.longCount = longs;
+        this.doubleCount = doubles;
+    }
+
+    /**
+     * Reads the schema of a result set
+     *
+     * @param md The metadata of the result set
+     *
+     * @return The schema
+     *
+     * @throws SQLException If the metadata could not be read
+     */
+    static RowSchema of(ResultSetMetaData md) throws SQLException {
+        int count = md.getColumnCount();
+        List<String> labels = new ArrayList<>(count);
+        List<Integer> columns = new ArrayList<>(count);
+        Map<String, Integer> slots = new HashMap<>();
+        for (int column = 1; column <= count; column++) {
+            String label = md.getColumnLabel(column);
+            if (slots.putIfAbsent(label, labels.size()) == null) {
+                labels.add(label);
+                columns.add(column);
+            }
+        }
+        int[] indices = new int[columns.size()];
+        byte[] kinds = new byte[columns.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = columns.get(i);
+            kinds[i] = kindOf(md.getColumnClassName(indices[i]));
+        }
+        return new RowSchema(labels.toArray(new String[0]), indices, slots, kinds);
+    }
+
+    /**
+     * Gets how the values of a column are stored
+     *
+     * @param className The class of the values returned by the driver
+     *
+     * @return The kind of the column
+     */
+    private static byte kindOf(String className) {
+        if (Long.class.getName().equals(className)) {
+            return LONG;
+        }
+        if (Integer.class.getName().equals(className)) {
+            return INT;
+        }
+        if (Double.class.getName().equals(className)) {
+            return DOUBLE;
+        }
+        return OBJECT;
+    }
+
+    /**
+     * Reads the current row of a result set
+     *
+     * @param rs The result set
+     *
+     * @return The row
+     *
+     * @throws SQLException If the row could not be read
+     */
+    DbRow read(ResultSet rs) throws SQLException {
+        Object[] objects = new Object[objectCount];
+        long[] longs = longCount > 0 ? new long[longCount] : null;
+        double[] doubles = doubleCount > 0 ? new double[doubleCount] : null;
+        long[] nulls = null;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            int column = columns[slot];
+            switch (kinds[slot]) {
+                case LONG:
+                    longs[offsets[slot]] = rs.getLong(column);
+                    break;
+                case INT:
+                    longs[offsets[slot]] = rs.getInt(column);
+                    break;
+                case DOUBLE:
+                    doubles[offsets[slot]] = rs.getDouble(column);
+                    break;
+                default:
+                    objects[offsets[slot]] = rs.getObject(column);
+                    continue;
+            }
+            if (rs.wasNull()) {
+                if (nulls == null) {
+                    nulls = new long[(kinds.length + 63) >>> 6];
+                }
+                nulls[slot >>> 6] |= 1L << slot;
+            }
+        }
+        return new DbRow(this, objects, longs, doubles, nulls);
+    }
+
+    /**
+     * Gets the number of labels
+     *
+     * @return The number of labels
+     */
+    int size() {
+        return labels.length;
+    }
+
+    /**
+     * Gets the label of a slot
+     *
+     * @param slot The slot
+     *
+     * @return The label
+     */
+    String label(int slot) {
+        return labels[slot];
+    }
+
+    /**
+     * Gets how the value of a slot is stored
+     *
+     * @param slot The slot
+     *
+     * @return The kind of the slot
+     */
+    byte kind(int slot) {
+        return kinds[slot];
+    }
+
+    /**
+     * Gets the index of a slot's value in the array of its kind
+     *
+     * @param slot The slot
+     *
+     * @return The index
+     */
+    int offset(int slot) {
+        return offsets[slot];
+    }
+
+    /**
+     * Gets the slot of a label
+     *
+     * @param label The label
+     *
+     * @return The slot, or -1 if the schema has no such label
+     */
+    int slotOf(Object label) {
+        Integer slot = slots.get(label);
+        return slot != null ? slot : -1;
+    }
+}
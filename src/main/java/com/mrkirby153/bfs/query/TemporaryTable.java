@@ -0,0 +1,174 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.grammar.Grammar;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A temporary table holding the values of a large {@code WHERE IN} list. The table is created and
+ * filled on the connection executing the query, and dropped once the query has executed. Tables the
+ * grammar keeps until the transaction ends are emptied and filled again every time the query is
+ * executed
+ */
+@Slf4j
+class TemporaryTable {
+
+    /**
+     * The name of the table's column
+     */
+    static final String COLUMN = "value";
+
+    /**
+     * The number of values inserted by each statement filling the table
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * The number of the next temporary table. Tables are named uniquely so that a query can use
+     * any number of them
+     */
+    private static final AtomicLong counter = new AtomicLong();
+
+    /**
+     * A scope with no temporary tables
+     */
+    private static final Scope NONE = () -> {
+    };
+
+    /**
+     * The name of the table
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * The values inserted into the table
+     */
+    private final Object[] values;
+
+    private TemporaryTable(String name, Object[] values) {
+        this.name = name;
+        this.values = values;
+    }
+
+    /**
+     * Creates a temporary table for the values
+     *
+     * @param grammar The grammar the query is compiled with
+     * @param values  The distinct values
+     *
+     * @return The temporary table, or null if the grammar cannot store the values in one
+     */
+    static TemporaryTable of(Grammar grammar, Object[] values) {
+        String name = "bfs_in_" + counter.incrementAndGet();
+        if (grammar.compileCreateTemporaryTable(name, COLUMN, values, false) == null) {
+            return null;
+        }
+        return new TemporaryTable(name, values);
+    }
+
+    /**
+     * Creates and fills temporary tables on a connection
+     *
+     * @param connection The connection the query will execute on
+     * @param grammar    The grammar the query is compiled with
+     * @param tables     The temporary tables
+     * @param timeout    The timeout of each statement, or null if they should not time out
+     *
+     * @return The scope of the tables, dropping them when closed
+     *
+     * @throws SQLException If a table could not be created
+     */
+    static Scope create(Connection connection, Grammar grammar, List<TemporaryTable> tables,
+        Duration timeout) throws SQLException {
+        if (tables.isEmpty()) {
+            return NONE;
+        }
+        boolean transaction = !connection.getAutoCommit();
+        Scope scope = () -> drop(connection, grammar, tables, transaction);
+        try {
+            for (TemporaryTable table : tables) {
+                table.fill(connection, grammar, transaction, timeout);
+            }
+        } catch (SQLException e) {
+            try {
+                scope.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return scope;
+    }
+
+    private static void drop(Connection connection, Grammar grammar, List<TemporaryTable> tables,
+        boolean transaction) throws SQLException {
+        // Tables are dropped even if the query was cancelled, so they do not outlive it on pooled
+        // connections
+        try (Statement statement = connection.createStatement()) {
+            for (TemporaryTable table : tables) {
+                String sql = grammar.compileDropTemporaryTable(table.name, transaction);
+                if (sql != null) {
+                    statement.executeUpdate(sql);
+                }
+            }
+        }
+    }
+
+    private void fill(Connection connection, Grammar grammar, boolean transaction,
+        Duration timeout) throws SQLException {
+        log.debug("Creating temporary table {} with {} values", name, values.length);
+        QueryBuilder loader = new QueryBuilder(grammar).table(name);
+        // Only compiled, never executed. Holding the table keeps its SQL out of the compiled
+        // query cache, it is never compiled for this name again
+        loader.getTemporaryTables().add(this);
+        try (Statement statement = connection.createStatement();
+            QueryFuture.Registration registration = QueryBuilder.track(statement, timeout)) {
+            statement.executeUpdate(
+                grammar.compileCreateTemporaryTable(name, COLUMN, values, transaction));
+            if (grammar.compileDropTemporaryTable(name, transaction) == null) {
+                // The table is kept until the transaction ends, so an earlier execution of the
+                // query in the transaction may have created and filled it already
+                statement.executeUpdate(grammar.compileDelete(loader));
+            }
+        }
+        int start = 0;
+        while (start < values.length) {
+            int count = Math.min(INSERT_BATCH_SIZE, values.length - start);
+            String sql = grammar.compileInsertMany(loader, count, COLUMN);
+            try (PreparedStatement ps = connection.prepareStatement(sql);
+                QueryFuture.Registration registration = QueryBuilder.track(ps, timeout)) {
+                // Every full batch reuses the same statement
+                while (values.length - start >= count) {
+                    for (int i = 0; i < count; i++) {
+                        ParameterBinder.bind(ps, i + 1, values[start + i]);
+                    }
+                    ps.executeUpdate();
+                    start += count;
+                }
+            }
+        }
+    }
+
+    /**
+     * The temporary tables created for a query
+     */
+    interface Scope extends AutoCloseable {
+
+        /**
+         * Drops the temporary tables
+         *
+         * @throws SQLException If a table could not be dropped
+         */
+        @Override
+        void close() throws SQLException;
+    }
+}
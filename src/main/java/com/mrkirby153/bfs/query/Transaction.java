@@ -0,0 +1,219 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.connection.ConnectionFactory;
+import com.mrkirby153.bfs.connection.StatementType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * A database transaction. Every {@link QueryBuilder} (and therefore every model operation) created
+ * on the thread running the transaction uses the transaction's connection.
+ * <br>
+ * Transactions started while another transaction is running on the same thread are nested into
+ * it using a savepoint.
+ *
+ * @see DB#transaction(TransactionCallback)
+ */
+@Slf4j
+public class Transaction {
+
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    /**
+     * The connection the transaction is running on
+     */
+    private final Connection connection;
+
+    /**
+     * A handle to the connection that ignores {@link Connection#close()}, given to query builders
+     */
+    private final Connection handle;
+
+    /**
+     * The savepoint this transaction rolls back to, or null if it is not nested
+     */
+    private final Savepoint savepoint;
+
+    /**
+     * If the transaction should be rolled back instead of committed
+     */
+    @Getter
+    private volatile boolean rollbackOnly = false;
+
+    /**
+     * The first failure of a query executed in this transaction
+     */
+    private volatile Throwable failure;
+
+    private volatile boolean active = true;
+
+    private Transaction(Connection connection, Savepoint savepoint) {
+        this.connection = connection;
+        this.savepoint = savepoint;
+        this.handle = (Connection) Proxy
+            .newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Gets the transaction running on the current thread
+     *
+     * @return The transaction or null if there is no transaction running
+     */
+    static Transaction current() {
+        Transaction transaction = current.get();
+        return transaction != null && transaction.active ? transaction : null;
+    }
+
+    /**
+     * Runs the callback in a transaction
+     *
+     * @param factory  The factory to get the transaction's connection from
+     * @param callback The callback to run
+     */
+    static void run(ConnectionFactory factory, TransactionCallback callback) {
+        Transaction parent = current();
+        if (parent != null) {
+            Savepoint savepoint;
+            try {
+                savepoint = parent.connection.setSavepoint();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not create a savepoint", e);
+            }
+            new Transaction(parent.connection, savepoint).execute(callback);
+            return;
+        }
+        try (Connection connection = factory.getConnection(StatementType.WRITE)) {
+            connection.setAutoCommit(false);
+            try {
+                new Transaction(connection, null).execute(callback);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open a transaction", e);
+        }
+    }
+
+    /**
+     * Gets the connection the transaction is running on. The connection is closed when the
+     * transaction completes
+     *
+     * @return The connection
+     */
+    public Connection getConnection() {
+        if (!active) {
+            throw new IllegalStateException("The transaction has already completed");
+        }
+        return handle;
+    }
+
+    /**
+     * Checks if the transaction is still running
+     *
+     * @return True if the transaction has not been committed or rolled back
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Checks if the transaction is nested in another transaction
+     *
+     * @return True if the transaction is nested
+     */
+    public boolean isNested() {
+        return savepoint != null;
+    }
+
+    /**
+     * Marks the transaction to be rolled back once the callback returns
+     */
+    public void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    /**
+     * Marks the transaction as failed. Failed transactions are rolled back and an exception is
+     * thrown to the caller
+     *
+     * @param cause The failure
+     */
+    void fail(Throwable cause) {
+        if (this.failure == null) {
+            this.failure = cause;
+        }
+    }
+
+    private void execute(TransactionCallback callback) {
+        Transaction previous = current.get();
+        current.set(this);
+        // Anything but a commit rolls back, including errors thrown by the callback. Otherwise
+        // restoring auto commit on the connection would commit the partial work
+        boolean committed = false;
+        try {
+            try {
+                callback.run(this);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("The transaction was rolled back", e);
+            } finally {
+                active = false;
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+            if (failure != null) {
+                throw new IllegalStateException(
+                    "The transaction was rolled back because a query failed", failure);
+            }
+            if (rollbackOnly) {
+                return;
+            }
+            try {
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                } else {
+                    connection.commit();
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not commit the transaction", e);
+            }
+            committed = true;
+        } finally {
+            if (!committed) {
+                rollback();
+            }
+        }
+    }
+
+    private void rollback() {
+        try {
+            if (savepoint != null) {
+                connection.rollback(savepoint);
+            } else {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            log.error("Could not roll back the transaction", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mrkirby153.bfs.query;
+
+/**
+ * A unit of work run in a {@link Transaction}
+ */
+@FunctionalInterface
+public interface TransactionCallback {
+
+    /**
+     * Runs the work. Throwing an exception rolls back the transaction
+     *
+     * @param transaction The transaction
+     *
+     * @throws Exception If the transaction should be rolled back
+     */
+    void run(Transaction transaction) throws Exception;
+}
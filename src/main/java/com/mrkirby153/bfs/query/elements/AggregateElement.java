@@ -0,0 +1,46 @@
+package com.mrkirby153.bfs.query.elements;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * An aggregate function computed by the query
+ */
+@RequiredArgsConstructor
+@Getter
+public class AggregateElement {
+
+    /**
+     * The aggregate function
+     */
+    @NonNull
+    private final Type type;
+
+    /**
+     * The column the function is computed over, or null for every row
+     */
+    private final String column;
+
+    /**
+     * The name of the aggregate in the returned rows
+     */
+    private final String alias;
+
+    /**
+     * If the function is only computed over distinct values
+     */
+    private final boolean distinct;
+
+    public AggregateElement(Type type, String column, String alias) {
+        this(type, column, alias, false);
+    }
+
+    public enum Type {
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVG
+    }
+}
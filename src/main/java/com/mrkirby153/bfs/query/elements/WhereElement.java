@@ -44,6 +44,7 @@ public class WhereElement {
         IN,
         NOT_IN,
         SUB,
-        NOT_SUB
+        NOT_SUB,
+        SEEK
     }
 }
@@ -0,0 +1,778 @@
+package com.mrkirby153.bfs.query.grammar;
+
+import com.mrkirby153.bfs.CacheStats;
+import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
+import com.mrkirby153.bfs.query.elements.JoinElement;
+import com.mrkirby153.bfs.query.elements.OrderElement;
+import com.mrkirby153.bfs.query.elements.WhereElement;
+import com.mrkirby153.bfs.query.elements.WhereElement.Type;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The base of the grammars for SQL databases. Statements are appended in a single pass into a
+ * reusable buffer and cached by their {@link QueryShape}. Implementations decide how identifiers
+ * are quoted
+ */
+@Slf4j
+public abstract class AbstractGrammar implements Grammar {
+
+    /**
+     * The default number of compiled queries cached by the grammar
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    /**
+     * The maximum number of quoted identifiers to remember before the cache is cleared
+     */
+    private static final int MAX_QUOTED_IDENTIFIERS = 4096;
+
+    /**
+     * The largest buffer kept between compilations. Larger buffers are discarded so that one huge
+     * query doesn't pin its memory for the lifetime of the thread
+     */
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    /**
+     * The longest string stored in a temporary table. Longer strings would exceed the maximum key
+     * length of some databases
+     */
+    private static final int MAX_TEMPORARY_STRING = 255;
+
+    /**
+     * The name of the sub-query selecting the rows of a limited aggregate
+     */
+    private static final String LIMITED_TABLE = "bfs_limited";
+
+    /**
+     * The name of the column aggregated by a limited aggregate
+     */
+    private static final String LIMITED_COLUMN = "bfs_value";
+
+    /**
+     * Identifiers and their quoted form
+     */
+    private final ConcurrentHashMap<String, String> quoted = new ConcurrentHashMap<>();
+
+    /**
+     * The buffer SQL is compiled into, reused across compilations on the same thread
+     */
+    private final ThreadLocal<StringBuilder> buffer = ThreadLocal
+        .withInitial(() -> new StringBuilder(256));
+
+    /**
+     * The compiled SQL of recently compiled query shapes
+     */
+    private final CompiledQueryCache cache = new CompiledQueryCache(DEFAULT_CACHE_SIZE);
+
+    /**
+     * The character identifiers are quoted with
+     */
+    private final char quote;
+
+    protected AbstractGrammar(char quote) {
+        this.quote = quote;
+    }
+
+    /**
+     * Sets the maximum number of compiled queries cached by the grammar
+     *
+     * @param cacheSize The maximum number of queries, or 0 to disable the cache
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+    }
+
+    public int getCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Gets the SQL compiled for a query shape, compiling it if it is not cached. Queries using
+     * temporary tables are always compiled, their tables are named uniquely so their SQL is never
+     * compiled again
+     *
+     * @param builder  The query builder
+     * @param shapeOf  Computes the shape of the query
+     * @param compiler Compiles the query
+     *
+     * @return The SQL
+     */
+    protected String cached(QueryBuilder builder, Supplier<String> shapeOf,
+        Supplier<String> compiler) {
+        if (builder.hasTemporaryTables()) {
+            return compiler.get();
+        }
+        return cache.get(shapeOf, compiler);
+    }
+
+    @Override
+    public String compileSelect(QueryBuilder builder) {
+        return cached(builder, () -> QueryShape.of("select", builder),
+            () -> emitSelect(builder));
+    }
+
+    @Override
+    public String compileUpdate(QueryBuilder builder, String... columnNames) {
+        return cached(builder, () -> QueryShape.of("update", builder, (Object[]) columnNames),
+            () -> emitUpdate(builder, columnNames));
+    }
+
+    @Override
+    public String compileDelete(QueryBuilder builder) {
+        return cached(builder, () -> QueryShape.of("delete", builder),
+            () -> emitDelete(builder));
+    }
+
+    @Override
+    public String compileExists(QueryBuilder builder) {
+        return cached(builder, () -> QueryShape.of("exists", builder),
+            () -> emitExists(builder));
+    }
+
+    @Override
+    public String compileAggregate(QueryBuilder builder, AggregateElement aggregate) {
+        return cached(builder, () -> QueryShape
+                .of("aggregate", builder, aggregate.getType(), aggregate.getColumn(),
+                    aggregate.isDistinct()),
+            () -> emitAggregate(builder, aggregate));
+    }
+
+    @Override
+    public String compileInsert(QueryBuilder builder, String... columnNames) {
+        return compileInsertMany(builder, 1, columnNames);
+    }
+
+    @Override
+    public String compileInsertMany(QueryBuilder builder, long count, String... columnNames) {
+        return cached(builder,
+            () -> QueryShape.of("insert" + count, builder, (Object[]) columnNames),
+            () -> emitInsert(builder, count, columnNames));
+    }
+
+    @Override
+    public String compileCreateTemporaryTable(String table, String column, Object[] values,
+        boolean transaction) {
+        String type = temporaryColumnType(values);
+        if (type == null) {
+            return null;
+        }
+        StringBuilder sb = borrowBuffer();
+        sb.append("CREATE ").append(temporaryTableKeyword()).append(" TABLE ");
+        if (isTemporaryTableKept(transaction)) {
+            sb.append("IF NOT EXISTS ");
+        }
+        appendIdentifier(sb, table);
+        sb.append(" (");
+        appendIdentifier(sb, column);
+        sb.append(' ').append(type).append(" PRIMARY KEY)");
+        return release(sb);
+    }
+
+    @Override
+    public String compileDropTemporaryTable(String table, boolean transaction) {
+        StringBuilder sb = borrowBuffer();
+        sb.append("DROP TABLE IF EXISTS ");
+        appendIdentifier(sb, table);
+        return release(sb);
+    }
+
+    /**
+     * Gets the keyword creating a table that is private to the connection
+     *
+     * @return The keyword
+     */
+    protected String temporaryTableKeyword() {
+        return "TEMPORARY";
+    }
+
+    /**
+     * Checks if temporary tables are kept until the transaction ends instead of being dropped
+     * after the query. A kept table may already exist when the query is executed again
+     *
+     * @param transaction If the table is created in a transaction
+     *
+     * @return True if the table is kept
+     */
+    protected boolean isTemporaryTableKept(boolean transaction) {
+        return false;
+    }
+
+    /**
+     * Gets the column type of a temporary table holding the values. Integers are stored as
+     * {@code BIGINT} and strings as {@code VARCHAR}
+     *
+     * @param values The values
+     *
+     * @return The column type, or null if the values cannot be stored in a temporary table
+     */
+    protected String temporaryColumnType(Object[] values) {
+        boolean integers = true;
+        boolean strings = true;
+        int length = 1;
+        for (Object value : values) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+                strings = false;
+            } else if (value instanceof String) {
+                integers = false;
+                length = Math.max(length, ((String) value).length());
+            } else {
+                return null;
+            }
+        }
+        if (integers) {
+            return "BIGINT";
+        }
+        if (strings && length <= MAX_TEMPORARY_STRING) {
+            return "VARCHAR(" + length + ")";
+        }
+        return null;
+    }
+
+    @Override
+    public void bind(QueryBuilder builder, PreparedStatement statement) {
+        try {
+            builder.getBindings().bind(statement);
+        } catch (SQLException e) {
+            log.error("Could not bind the values of query {}", statement, e);
+        }
+    }
+
+    private String emitSelect(QueryBuilder builder) {
+        StringBuilder sb = borrowBuffer();
+        appendSelect(sb, builder);
+        return release(sb);
+    }
+
+    private String emitUpdate(QueryBuilder builder, String[] columnNames) {
+        StringBuilder sb = borrowBuffer();
+        sb.append("UPDATE ");
+        appendIdentifier(sb, builder.getTable());
+        sb.append(" SET ");
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            appendColumn(sb, columnNames[i]);
+            sb.append(" = ?");
+        }
+        appendWheres(sb, builder);
+        return release(sb);
+    }
+
+    private String emitDelete(QueryBuilder builder) {
+        StringBuilder sb = borrowBuffer();
+        sb.append("DELETE FROM ");
+        appendIdentifier(sb, builder.getTable());
+        appendWheres(sb, builder);
+        return release(sb);
+    }
+
+    private String emitExists(QueryBuilder builder) {
+        StringBuilder sb = borrowBuffer();
+        sb.append("SELECT EXISTS(");
+        appendSelect(sb, builder);
+        sb.append(") AS ");
+        appendIdentifier(sb, "exists");
+        return release(sb);
+    }
+
+    private String emitAggregate(QueryBuilder builder, AggregateElement aggregate) {
+        StringBuilder sb = borrowBuffer();
+        if (builder.getLimit() != null || builder.getOffset() != null) {
+            appendLimitedAggregate(sb, builder, aggregate);
+            return release(sb);
+        }
+        sb.append("SELECT ");
+        appendAggregate(sb, aggregate);
+        sb.append(" FROM ");
+        appendIdentifier(sb, builder.getTable());
+        appendJoins(sb, builder.getJoins());
+        appendWheres(sb, builder);
+        appendHavings(sb, builder);
+        return release(sb);
+    }
+
+    /**
+     * Appends an aggregate over the rows of a limited or offset query. The limit applies to the
+     * rows being aggregated, so they are selected by a sub-query and aggregated outside of it
+     *
+     * @param sb        The buffer
+     * @param builder   The query builder
+     * @param aggregate The aggregate
+     */
+    private void appendLimitedAggregate(StringBuilder sb, QueryBuilder builder,
+        AggregateElement aggregate) {
+        sb.append("SELECT ");
+        if (aggregate.getColumn() == null) {
+            appendAggregate(sb, aggregate);
+        } else {
+            appendAggregate(sb, new AggregateElement(aggregate.getType(), LIMITED_COLUMN,
+                aggregate.getAlias(), aggregate.isDistinct()));
+        }
+        sb.append(" FROM (SELECT ");
+        if (aggregate.getColumn() == null) {
+            sb.append('1');
+        } else {
+            if (aggregate.isDistinct()) {
+                // The limit applies to the distinct values
+                sb.append("DISTINCT ");
+            }
+            appendColumn(sb, aggregate.getColumn());
+            sb.append(" AS ");
+            appendIdentifier(sb, LIMITED_COLUMN);
+        }
+        sb.append(" FROM ");
+        appendIdentifier(sb, builder.getTable());
+        appendJoins(sb, builder.getJoins());
+        appendWheres(sb, builder);
+        appendHavings(sb, builder);
+        appendOrders(sb, builder.getOrders());
+        appendLimit(sb, builder);
+        sb.append(") AS ");
+        appendIdentifier(sb, LIMITED_TABLE);
+    }
+
+    private String emitInsert(QueryBuilder builder, long count, String[] columnNames) {
+        StringBuilder sb = borrowBuffer();
+        appendInsert(sb, builder, count, columnNames);
+        return release(sb);
+    }
+
+    /**
+     * Appends an insert of a number of rows
+     *
+     * @param sb          The buffer
+     * @param builder     The query builder
+     * @param count       The number of rows
+     * @param columnNames The columns being inserted
+     */
+    protected void appendInsert(StringBuilder sb, QueryBuilder builder, long count,
+        String[] columnNames) {
+        sb.append("INSERT INTO ");
+        appendIdentifier(sb, builder.getTable());
+        sb.append(' ');
+        appendColumnList(sb, columnNames);
+        sb.append(" VALUES ");
+        appendRows(sb, count, columnNames);
+    }
+
+    /**
+     * Appends a parenthesized list of columns
+     *
+     * @param sb      The buffer
+     * @param columns The columns
+     */
+    protected void appendColumnList(StringBuilder sb, String[] columns) {
+        sb.append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            appendColumn(sb, columns[i]);
+        }
+        sb.append(')');
+    }
+
+    /**
+     * Appends the placeholders of a number of rows
+     *
+     * @param sb          The buffer
+     * @param count       The number of rows
+     * @param columnNames The columns of each row
+     */
+    protected void appendRows(StringBuilder sb, long count, String[] columnNames) {
+        for (long row = 0; row < count; row++) {
+            if (row > 0) {
+                sb.append(", ");
+            }
+            sb.append('(');
+            appendParameters(sb, columnNames.length);
+            sb.append(')');
+        }
+    }
+
+    /**
+     * Gets the SQL compiled for an upsert, compiling it if it is not cached
+     *
+     * @param builder       The query builder
+     * @param count         The number of rows
+     * @param columnNames   The columns being inserted
+     * @param uniqueBy      The columns of the unique key rows conflict on
+     * @param updateColumns The columns updated on existing rows
+     * @param compiler      Compiles the upsert
+     *
+     * @return The SQL
+     */
+    protected String cachedUpsert(QueryBuilder builder, long count, String[] columnNames,
+        String[] uniqueBy, String[] updateColumns, Supplier<String> compiler) {
+        return cached(builder, () -> {
+            List<Object> extra = new ArrayList<>();
+            for (String[] names : new String[][]{columnNames, uniqueBy, updateColumns}) {
+                extra.add(names.length);
+                extra.addAll(Arrays.asList(names));
+            }
+            return QueryShape.of("upsert" + count, builder, extra.toArray());
+        }, compiler);
+    }
+
+    /**
+     * Gets the thread's compilation buffer, emptied
+     *
+     * @return The buffer
+     */
+    protected StringBuilder borrowBuffer() {
+        StringBuilder sb = buffer.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * Gets the SQL compiled into the buffer
+     *
+     * @param sb The buffer
+     *
+     * @return The SQL
+     */
+    protected String release(StringBuilder sb) {
+        String sql = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            buffer.remove();
+        }
+        return sql;
+    }
+
+    private void appendSelect(StringBuilder sb, QueryBuilder builder) {
+        sb.append("SELECT ");
+        if (builder.isDistinct()) {
+            sb.append("DISTINCT ");
+        }
+        List<String> columns = builder.getColumns();
+        List<AggregateElement> aggregates = builder.getAggregates();
+        if (columns.isEmpty() && aggregates.isEmpty()) {
+            sb.append('*');
+        } else {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                appendColumn(sb, columns.get(i));
+            }
+            for (int i = 0; i < aggregates.size(); i++) {
+                if (i > 0 || !columns.isEmpty()) {
+                    sb.append(", ");
+                }
+                appendAggregate(sb, aggregates.get(i));
+            }
+        }
+        sb.append(" FROM ");
+        appendIdentifier(sb, builder.getTable());
+        appendJoins(sb, builder.getJoins());
+        appendWheres(sb, builder);
+        List<String> groups = builder.getGroups();
+        for (int i = 0; i < groups.size(); i++) {
+            sb.append(i == 0 ? " GROUP BY " : ", ");
+            appendColumn(sb, groups.get(i));
+        }
+        appendHavings(sb, builder);
+        appendOrders(sb, builder.getOrders());
+        appendLimit(sb, builder);
+    }
+
+    private void appendLimit(StringBuilder sb, QueryBuilder builder) {
+        if (builder.getLimit() != null) {
+            sb.append(" LIMIT ").append(builder.getLimit().longValue());
+        }
+        if (builder.getOffset() != null) {
+            sb.append(" OFFSET ").append(builder.getOffset().longValue());
+        }
+    }
+
+    private void appendJoins(StringBuilder sb, List<JoinElement> joins) {
+        for (JoinElement join : joins) {
+            switch (join.getType()) {
+                case INNER:
+                    sb.append(" INNER JOIN ");
+                    break;
+                case OUTER:
+                    sb.append(" FULL OUTER JOIN ");
+                    break;
+                case LEFT:
+                    sb.append(" LEFT JOIN ");
+                    break;
+                case RIGHT:
+                    sb.append(" RIGHT JOIN ");
+                    break;
+            }
+            appendIdentifier(sb, join.getTable());
+            sb.append(" ON ");
+            appendColumn(sb, join.getFirstColumn());
+            sb.append(' ').append(join.getOperation()).append(' ');
+            appendColumn(sb, join.getSecondColumn());
+        }
+    }
+
+    /**
+     * Appends an aggregate function, followed by its alias if it has one
+     *
+     * @param sb        The buffer
+     * @param aggregate The aggregate
+     */
+    private void appendAggregate(StringBuilder sb, AggregateElement aggregate) {
+        sb.append(aggregate.getType().name()).append('(');
+        if (aggregate.isDistinct()) {
+            sb.append("DISTINCT ");
+        }
+        if (aggregate.getColumn() == null) {
+            sb.append('*');
+        } else {
+            appendColumn(sb, aggregate.getColumn());
+        }
+        sb.append(')');
+        if (aggregate.getAlias() != null) {
+            sb.append(" AS ");
+            appendIdentifier(sb, aggregate.getAlias());
+        }
+    }
+
+    private void appendHavings(StringBuilder sb, QueryBuilder builder) {
+        List<WhereElement> havings = builder.getHavings();
+        for (int i = 0; i < havings.size(); i++) {
+            WhereElement having = havings.get(i);
+            if (i == 0) {
+                sb.append(" HAVING ");
+            } else {
+                sb.append(' ').append(having.getBool()).append(' ');
+            }
+            AggregateElement aggregate = (AggregateElement) having.get("aggregate");
+            if (aggregate != null) {
+                appendAggregate(sb, aggregate);
+            } else {
+                appendColumn(sb, having.getColumn());
+            }
+            sb.append(' ').append(having.get("operator")).append(" ?");
+        }
+    }
+
+    private void appendOrders(StringBuilder sb, List<OrderElement> orders) {
+        for (int i = 0; i < orders.size(); i++) {
+            OrderElement order = orders.get(i);
+            sb.append(i == 0 ? " ORDER BY " : ", ");
+            appendColumn(sb, order.getColumn());
+            switch (order.getDirection()) {
+                case ASC:
+                    sb.append(" ASC");
+                    break;
+                case DESC:
+                    sb.append(" DESC");
+                    break;
+            }
+        }
+    }
+
+    private void appendWheres(StringBuilder sb, QueryBuilder builder) {
+        List<WhereElement> wheres = builder.getWheres();
+        if (wheres.isEmpty()) {
+            return;
+        }
+        int seeks = 0;
+        for (WhereElement where : wheres) {
+            if (where.getType() == Type.SEEK) {
+                seeks++;
+            }
+        }
+        int others = wheres.size() - seeks;
+        sb.append(" WHERE ");
+        // The seek must apply to every row, so the other clauses are grouped before it and their
+        // ORs cannot escape the seek. Its values are bound in their own section after them
+        boolean group = seeks > 0 && others > 1;
+        if (group) {
+            sb.append('(');
+        }
+        int appended = 0;
+        for (WhereElement where : wheres) {
+            if (where.getType() != Type.SEEK) {
+                appendWhere(sb, where, appended++);
+            }
+        }
+        if (group) {
+            sb.append(')');
+        }
+        for (WhereElement where : wheres) {
+            if (where.getType() == Type.SEEK) {
+                if (appended++ > 0) {
+                    sb.append(" AND ");
+                }
+                appendSeek(sb, (OrderElement[]) where.get("orders"));
+            }
+        }
+    }
+
+    private void appendWhere(StringBuilder sb, WhereElement where, int index) {
+        if (index > 0) {
+            sb.append(' ').append(where.getBool()).append(' ');
+        }
+        switch (where.getType()) {
+            case BASIC:
+                appendColumn(sb, where.getColumn());
+                sb.append(' ').append(where.get("operator")).append(" ?");
+                break;
+            case NOT_NULL:
+                appendColumn(sb, where.getColumn());
+                sb.append(" IS NOT NULL");
+                break;
+            case NULL:
+                appendColumn(sb, where.getColumn());
+                sb.append(" IS NULL");
+                break;
+            case IN:
+            case NOT_IN:
+                appendColumn(sb, where.getColumn());
+                sb.append(where.getType() == Type.IN ? " IN (" : " NOT IN (");
+                appendParameters(sb, ((Object[]) where.get("values")).length);
+                sb.append(')');
+                break;
+            case SUB:
+            case NOT_SUB:
+                QueryBuilder subQuery = (QueryBuilder) where.get("query");
+                sb.append(where.getColumn());
+                sb.append(where.getType() == Type.SUB ? " IN (" : " NOT IN (");
+                if (subQuery.getGrammar() == this) {
+                    appendSelect(sb, subQuery);
+                } else {
+                    sb.append(subQuery.getGrammar().compileSelect(subQuery));
+                }
+                sb.append(')');
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Appends the predicate of rows after a keyset cursor. Orders in a single direction compare
+     * the order columns as a row, mixed directions are expanded into a comparison per column
+     *
+     * @param sb     The buffer
+     * @param orders The orders of the query
+     */
+    private void appendSeek(StringBuilder sb, OrderElement[] orders) {
+        boolean mixed = false;
+        for (OrderElement order : orders) {
+            mixed |= order.getDirection() != orders[0].getDirection();
+        }
+        if (orders.length == 1) {
+            appendColumn(sb, orders[0].getColumn());
+            sb.append(comparison(orders[0])).append('?');
+        } else if (!mixed) {
+            sb.append('(');
+            for (int i = 0; i < orders.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                appendColumn(sb, orders[i].getColumn());
+            }
+            sb.append(')').append(comparison(orders[0])).append('(');
+            appendParameters(sb, orders.length);
+            sb.append(')');
+        } else {
+            sb.append('(');
+            for (int i = 0; i < orders.length; i++) {
+                sb.append(i == 0 ? "(" : " OR (");
+                for (int j = 0; j < i; j++) {
+                    appendColumn(sb, orders[j].getColumn());
+                    sb.append(" = ? AND ");
+                }
+                appendColumn(sb, orders[i].getColumn());
+                sb.append(comparison(orders[i])).append("?)");
+            }
+            sb.append(')');
+        }
+    }
+
+    private static String comparison(OrderElement order) {
+        return order.getDirection() == OrderElement.Direction.DESC ? " < " : " > ";
+    }
+
+    private void appendParameters(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+    }
+
+    /**
+     * Appends a quoted table or column name. Names that already contain quoted parts are
+     * appended as they are
+     *
+     * @param sb   The buffer
+     * @param name The name
+     */
+    protected void appendIdentifier(StringBuilder sb, String name) {
+        if (name.equals("*") || isPreWrapped(name)) {
+            sb.append(name);
+        } else {
+            sb.append(quote).append(name).append(quote);
+        }
+    }
+
+    /**
+     * Appends a quoted column name, quoting the table and column separately if the column is
+     * qualified with its table
+     *
+     * @param sb     The buffer
+     * @param column The column
+     */
+    protected void appendColumn(StringBuilder sb, String column) {
+        String wrapped = quoted.get(column);
+        if (wrapped == null) {
+            wrapped = wrapColumn(column);
+            if (quoted.size() >= MAX_QUOTED_IDENTIFIERS) {
+                quoted.clear();
+            }
+            quoted.put(column, wrapped);
+        }
+        sb.append(wrapped);
+    }
+
+    private String wrapColumn(String column) {
+        if (isPreWrapped(column)) {
+            return column;
+        }
+        StringBuilder sb = new StringBuilder(column.length() + 4);
+        int dot = column.lastIndexOf('.');
+        if (dot >= 0) {
+            appendIdentifier(sb, column.substring(0, dot));
+            sb.append('.');
+            appendIdentifier(sb, column.substring(dot + 1));
+        } else {
+            appendIdentifier(sb, column);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks if a name contains a part that has already been quoted
+     *
+     * @param name The name
+     *
+     * @return True if the name contains a pair of quote characters
+     */
+    private boolean isPreWrapped(String name) {
+        int first = name.indexOf(quote);
+        return first >= 0 && name.indexOf(quote, first + 1) > 0;
+    }
+}
@@ -0,0 +1,96 @@
+package com.mrkirby153.bfs.query.grammar;
+
+import com.mrkirby153.bfs.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A least recently used cache of compiled SQL, keyed by the {@link QueryShape} of the query it was
+ * compiled from
+ */
+class CompiledQueryCache {
+
+    private volatile int maxSize;
+
+    private final LinkedHashMap<String, String> queries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CompiledQueryCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.queries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() <= CompiledQueryCache.this.maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the SQL compiled for a shape, compiling it if it is not cached
+     *
+     * @param shapeOf  Computes the shape of the query. Not called if the cache is disabled
+     * @param compiler Compiles the query if it is not cached
+     *
+     * @return The SQL
+     */
+    String get(Supplier<String> shapeOf, Supplier<String> compiler) {
+        if (maxSize == 0) {
+            return compiler.get();
+        }
+        String shape = shapeOf.get();
+        String sql;
+        synchronized (queries) {
+            sql = queries.get(shape);
+        }
+        if (sql != null) {
+            hits.increment();
+            return sql;
+        }
+        misses.increment();
+        // Compiled outside of the lock, two threads compiling the same shape both get the same SQL
+        sql = compiler.get();
+        synchronized (queries) {
+            queries.put(shape, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Sets the maximum number of compiled queries to keep, evicting the least recently used
+     * queries if there are more
+     *
+     * @param maxSize The maximum size, or 0 to disable the cache
+     */
+    void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        }
+        synchronized (queries) {
+            this.maxSize = maxSize;
+            while (queries.size() > maxSize) {
+                queries.remove(queries.keySet().iterator().next());
+                evictions.increment();
+            }
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    CacheStats getStats() {
+        synchronized (queries) {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), queries.size());
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.mrkirby153.bfs.query.grammar;
 
+import com.mrkirby153.bfs.CacheStats;
 import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.PreparedStatement;
 
@@ -17,10 +20,139 @@ public interface Grammar {
 
     String compileExists(QueryBuilder builder);
 
+    /**
+     * Compiles a query computing a single aggregate over the rows matching the builder
+     *
+     * @param builder   The query builder
+     * @param aggregate The aggregate to compute
+     *
+     * @return The SQL
+     */
+    default String compileAggregate(QueryBuilder builder, AggregateElement aggregate) {
+        throw new UnsupportedOperationException("The grammar does not support aggregates");
+    }
+
     String compileInsert(QueryBuilder builder, String... columnNames);
 
     String compileInsertMany(QueryBuilder builder, long count,
         String... columnNames);
 
+    /**
+     * Compiles an insert of a number of rows that returns the generated key of every inserted row
+     * as its result set, so that the keys are read back in the same round trip
+     *
+     * @param builder     The query builder
+     * @param count       The number of rows
+     * @param keyColumn   The column holding the generated key
+     * @param columnNames The columns being inserted
+     *
+     * @return The SQL, or null if the grammar relies on the driver's generated keys instead
+     */
+    @Nullable
+    default String compileInsertReturning(QueryBuilder builder, long count, String keyColumn,
+        String... columnNames) {
+        return null;
+    }
+
+    /**
+     * Compiles an insert of a number of rows that updates the existing row instead when an
+     * inserted row conflicts with it on a unique key
+     *
+     * @param builder       The query builder
+     * @param count         The number of rows
+     * @param columnNames   The columns being inserted
+     * @param uniqueBy      The columns of the unique key rows conflict on
+     * @param updateColumns The columns updated on existing rows, or none to leave them unchanged
+     *
+     * @return The SQL
+     */
+    default String compileUpsert(QueryBuilder builder, long count, String[] columnNames,
+        String[] uniqueBy, String[] updateColumns) {
+        throw new UnsupportedOperationException("The grammar does not support upserts");
+    }
+
+    /**
+     * Compiles a bulk load of tab-separated rows streamed from the client. Fields are escaped with
+     * a backslash, rows end with a newline and {@code \N} is null
+     *
+     * @param builder     The query builder
+     * @param columnNames The columns of each row, in the order of the fields
+     *
+     * @return The SQL
+     */
+    default String compileLoadData(QueryBuilder builder, String... columnNames) {
+        throw new UnsupportedOperationException("The grammar does not support bulk loads");
+    }
+
+    /**
+     * Compiles the creation of a temporary table, private to the connection, with a single column
+     * able to hold the values
+     *
+     * @param table       The name of the table
+     * @param column      The name of the column
+     * @param values      The values that will be inserted into the table
+     * @param transaction If the table is created in a transaction
+     *
+     * @return The SQL, or null if the grammar does not support temporary tables or the values
+     * cannot be stored in one
+     */
+    @Nullable
+    default String compileCreateTemporaryTable(String table, String column, Object[] values,
+        boolean transaction) {
+        return null;
+    }
+
+    /**
+     * Compiles dropping a temporary table
+     *
+     * @param table       The name of the table
+     * @param transaction If the table was created in a transaction
+     *
+     * @return The SQL, or null if the table is dropped when the transaction ends
+     */
+    @Nullable
+    default String compileDropTemporaryTable(String table, boolean transaction) {
+        return null;
+    }
+
     void bind(QueryBuilder builder, PreparedStatement statement);
+
+    /**
+     * Gets the fetch size of statements whose rows are read with a cursor, so that the driver
+     * streams the rows instead of reading the whole result into memory
+     *
+     * @return The fetch size, or 0 to use the driver's default
+     */
+    default int getCursorFetchSize() {
+        return 0;
+    }
+
+    /**
+     * Checks if the driver only streams the rows of a cursor when auto commit is disabled
+     *
+     * @return True if cursors outside of a transaction run in a transaction of their own
+     */
+    default boolean isCursorTransactional() {
+        return false;
+    }
+
+    /**
+     * Checks if no other statement can run on a connection while the rows of a cursor are streamed
+     * from it
+     *
+     * @return True if a streaming cursor holds its connection until it is closed
+     */
+    default boolean isCursorExclusive() {
+        return false;
+    }
+
+    /**
+     * Gets the statistics of the grammar's cache of compiled queries
+     *
+     * @return The statistics, or null if the grammar does not cache compiled queries
+     */
+    @Nullable
+    default CacheStats getCacheStats() {
+        return null;
+    }
 }
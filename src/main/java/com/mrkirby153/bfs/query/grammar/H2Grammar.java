@@ -0,0 +1,113 @@
+package com.mrkirby153.bfs.query.grammar;
+
+import com.mrkirby153.bfs.query.QueryBuilder;
+
+/**
+ * A grammar for the embedded H2 database, quoting identifiers with double quotes
+ *
+ * @see com.mrkirby153.bfs.connection.H2ConnectionFactory
+ */
+public class H2Grammar extends AbstractGrammar {
+
+    /**
+     * The aliases of the rows merged by an upsert
+     */
+    private static final String UPSERT_VALUES = "bfs_values";
+    private static final String UPSERT_ROW = "bfs_row";
+
+    public H2Grammar() {
+        super('"');
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * H2 merges the rows as a derived table, so that only the update columns of existing rows are
+     * replaced
+     */
+    @Override
+    public String compileUpsert(QueryBuilder builder, long count, String[] columnNames,
+        String[] uniqueBy, String[] updateColumns) {
+        return cachedUpsert(builder, count, columnNames, uniqueBy, updateColumns, () -> {
+            String table = builder.getTable();
+            StringBuilder sb = borrowBuffer();
+            sb.append("MERGE INTO ");
+            appendIdentifier(sb, table);
+            sb.append(" USING (SELECT * FROM (VALUES ");
+            appendRows(sb, count, columnNames);
+            sb.append(") ");
+            appendIdentifier(sb, UPSERT_VALUES);
+            sb.append(' ');
+            appendColumnList(sb, columnNames);
+            sb.append(") ");
+            appendIdentifier(sb, UPSERT_ROW);
+            sb.append(" ON (");
+            for (int i = 0; i < uniqueBy.length; i++) {
+                if (i > 0) {
+                    sb.append(" AND ");
+                }
+                appendQualified(sb, table, uniqueBy[i]);
+                sb.append(" = ");
+                appendQualified(sb, UPSERT_ROW, uniqueBy[i]);
+            }
+            sb.append(')');
+            if (updateColumns.length > 0) {
+                sb.append(" WHEN MATCHED THEN UPDATE SET ");
+                for (int i = 0; i < updateColumns.length; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    appendIdentifier(sb, updateColumns[i]);
+                    sb.append(" = ");
+                    appendQualified(sb, UPSERT_ROW, updateColumns[i]);
+                }
+            }
+            sb.append(" WHEN NOT MATCHED THEN INSERT ");
+            appendColumnList(sb, columnNames);
+            sb.append(" VALUES (");
+            for (int i = 0; i < columnNames.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                appendQualified(sb, UPSERT_ROW, columnNames[i]);
+            }
+            sb.append(')');
+            return release(sb);
+        });
+    }
+
+    private void appendQualified(StringBuilder sb, String table, String column) {
+        appendIdentifier(sb, table);
+        sb.append('.');
+        appendIdentifier(sb, column);
+    }
+
+    @Override
+    public String compileCreateTemporaryTable(String table, String column, Object[] values,
+        boolean transaction) {
+        String sql = super.compileCreateTemporaryTable(table, column, values, transaction);
+        if (sql == null || !transaction) {
+            return sql;
+        }
+        // Creating or dropping a table commits the open transaction, so tables created in a
+        // transaction are transactional and dropped when it ends instead
+        return sql + " ON COMMIT DROP TRANSACTIONAL";
+    }
+
+    @Override
+    public String compileDropTemporaryTable(String table, boolean transaction) {
+        return isTemporaryTableKept(transaction) ? null
+            : super.compileDropTemporaryTable(table, false);
+    }
+
+    @Override
+    protected boolean isTemporaryTableKept(boolean transaction) {
+        return transaction;
+    }
+
+    @Override
+    protected String temporaryTableKeyword() {
+        // H2's TEMPORARY tables are global unless they are declared LOCAL
+        return "LOCAL TEMPORARY";
+    }
+}
@@ -0,0 +1,66 @@
+package com.mrkirby153.bfs.query.grammar;
+
+import com.mrkirby153.bfs.query.QueryBuilder;
+
+/**
+ * A grammar for PostgreSQL, quoting identifiers with double quotes.
+ * <br>
+ * Inserts that return generated keys use {@code RETURNING}, so the keys of every inserted row come
+ * back with the insert in a single round trip. Values are bound with {@code ?} placeholders, which
+ * the PostgreSQL JDBC driver rewrites to its native {@code $n} parameters
+ */
+public class PostgresGrammar extends AbstractGrammar {
+
+    public PostgresGrammar() {
+        super('"');
+    }
+
+    @Override
+    public String compileInsertReturning(QueryBuilder builder, long count, String keyColumn,
+        String... columnNames) {
+        return cached(builder, () -> {
+            Object[] extra = new Object[columnNames.length + 1];
+            extra[0] = keyColumn;
+            System.arraycopy(columnNames, 0, extra, 1, columnNames.length);
+            return QueryShape.of("insertReturning" + count, builder, extra);
+        }, () -> {
+            StringBuilder sb = borrowBuffer();
+            appendInsert(sb, builder, count, columnNames);
+            sb.append(" RETURNING ");
+            appendColumn(sb, keyColumn);
+            return release(sb);
+        });
+    }
+
+    @Override
+    public int getCursorFetchSize() {
+        return 1000;
+    }
+
+    @Override
+    public boolean isCursorTransactional() {
+        // The driver reads the whole result into memory when auto commit is enabled
+        return true;
+    }
+
+    @Override
+    public String compileUpsert(QueryBuilder builder, long count, String[] columnNames,
+        String[] uniqueBy, String[] updateColumns) {
+        return cachedUpsert(builder, count, columnNames, uniqueBy, updateColumns, () -> {
+            StringBuilder sb = borrowBuffer();
+            appendInsert(sb, builder, count, columnNames);
+            sb.append(" ON CONFLICT ");
+            appendColumnList(sb, uniqueBy);
+            if (updateColumns.length == 0) {
+                sb.append(" DO NOTHING");
+            }
+            for (int i = 0; i < updateColumns.length; i++) {
+                sb.append(i == 0 ? " DO UPDATE SET " : ", ");
+                appendColumn(sb, updateColumns[i]);
+                sb.append(" = EXCLUDED.");
+                appendColumn(sb, updateColumns[i]);
+            }
+            return release(sb);
+        });
+    }
+}
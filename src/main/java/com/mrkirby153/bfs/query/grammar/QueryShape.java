@@ -0,0 +1,127 @@
+package com.mrkirby153.bfs.query.grammar;
+
+import com.mrkirby153.bfs.query.QueryBuilder;
+import com.mrkirby153.bfs.query.elements.AggregateElement;
+import com.mrkirby153.bfs.query.elements.JoinElement;
+import com.mrkirby153.bfs.query.elements.OrderElement;
+import com.mrkirby153.bfs.query.elements.WhereElement;
+
+/**
+ * Computes the shape of a query: everything about a {@link QueryBuilder} that affects the SQL it
+ * compiles to, but not the values that are bound to it. Queries with the same shape compile to the
+ * same SQL
+ */
+final class QueryShape {
+
+    /**
+     * Separates the parts of a shape. Identifiers never contain it, so shapes are unambiguous
+     */
+    private static final char SEPARATOR = '\0';
+
+    private QueryShape() {
+        // Utility class
+    }
+
+    /**
+     * Computes the shape of a statement
+     *
+     * @param kind    The kind of statement being compiled
+     * @param builder The query builder
+     * @param extra   Anything else passed to the grammar that affects the SQL
+     *
+     * @return The shape
+     */
+    static String of(String kind, QueryBuilder builder, Object... extra) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(kind);
+        for (Object o : extra) {
+            append(sb, o);
+        }
+        append(sb, builder);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, QueryBuilder builder) {
+        append(sb, builder.getGrammar().getClass().getName());
+        append(sb, builder.getTable());
+        append(sb, builder.isDistinct());
+        append(sb, builder.getColumns().size());
+        builder.getColumns().forEach(c -> append(sb, c));
+        append(sb, builder.getAggregates().size());
+        builder.getAggregates().forEach(a -> append(sb, a));
+        append(sb, builder.getJoins().size());
+        for (JoinElement join : builder.getJoins()) {
+            append(sb, join.getType());
+            append(sb, join.getTable());
+            append(sb, join.getFirstColumn());
+            append(sb, join.getOperation());
+            append(sb, join.getSecondColumn());
+        }
+        append(sb, builder.getWheres().size());
+        for (WhereElement where : builder.getWheres()) {
+            append(sb, where.getType());
+            append(sb, where.getBool());
+            append(sb, where.getColumn());
+            switch (where.getType()) {
+                case BASIC:
+                    append(sb, where.get("operator"));
+                    break;
+                case IN:
+                case NOT_IN:
+                    append(sb, ((Object[]) where.get("values")).length);
+                    break;
+                case SUB:
+                case NOT_SUB:
+                    QueryBuilder subQuery = (QueryBuilder) where.get("query");
+                    if (subQuery != null) {
+                        append(sb, subQuery);
+                    } else {
+                        append(sb, (Object) null);
+                    }
+                    break;
+                case SEEK:
+                    OrderElement[] seek = (OrderElement[]) where.get("orders");
+                    append(sb, seek.length);
+                    for (OrderElement order : seek) {
+                        append(sb, order.getColumn());
+                        append(sb, order.getDirection());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        append(sb, builder.getGroups().size());
+        builder.getGroups().forEach(g -> append(sb, g));
+        append(sb, builder.getHavings().size());
+        for (WhereElement having : builder.getHavings()) {
+            append(sb, having.getBool());
+            append(sb, having.getColumn());
+            append(sb, having.get("operator"));
+            append(sb, (AggregateElement) having.get("aggregate"));
+        }
+        append(sb, builder.getOrders().size());
+        for (OrderElement order : builder.getOrders()) {
+            append(sb, order.getColumn());
+            append(sb, order.getDirection());
+        }
+        // The limit and offset are written into the SQL, not bound
+        append(sb, builder.getLimit());
+        append(sb, builder.getOffset());
+    }
+
+    private static void append(StringBuilder sb, AggregateElement aggregate) {
+        if (aggregate == null) {
+            append(sb, (Object) null);
+            return;
+        }
+        append(sb, aggregate.getType());
+        append(sb, aggregate.isDistinct());
+        append(sb, aggregate.getColumn());
+        append(sb, aggregate.getAlias());
+    }
+
+    private static void append(StringBuilder sb, Object o) {
+        sb.append(SEPARATOR).append(o);
+    }
+}
@@ -0,0 +1,69 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkInsertTest extends DatabaseTest {
+
+    private int previousMaxBytes;
+
+    @BeforeEach
+    void createTable() {
+        DB.executeUpdate(
+            "CREATE TABLE t (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(20) UNIQUE)");
+        // Splits the inserts below into chunks of a few rows
+        previousMaxBytes = QueryBuilder.getMaxBulkInsertBytes();
+        QueryBuilder.setMaxBulkInsertBytes(200);
+    }
+
+    @AfterEach
+    void restoreMaxBytes() {
+        QueryBuilder.setMaxBulkInsertBytes(previousMaxBytes);
+    }
+
+    @Test
+    void returnsGeneratedKeysInTheOrderOfTheRows() {
+        assertKeysMatchRows(new QueryBuilder().table("t"));
+    }
+
+    @Test
+    void returnsGeneratedKeysInTheOrderOfTheRowsOverSeveralConnections() {
+        assertKeysMatchRows(new QueryBuilder().table("t").insertParallelism(3));
+    }
+
+    @Test
+    void rollsBackEveryChunkWhenOneFails() {
+        List<Map<String, Object>> rows = rows(50);
+        rows.set(40, Collections.singletonMap("name", "n0"));
+        assertThrows(Exception.class, () -> new QueryBuilder().table("t").insertBulk(rows).join());
+        assertEquals(0, new QueryBuilder().table("t").count());
+    }
+
+    private void assertKeysMatchRows(QueryBuilder builder) {
+        List<Map<String, Object>> rows = rows(100);
+        List<Long> keys = builder.insertBulkWithGenerated(rows).join();
+        assertEquals(rows.size(), keys.size());
+        for (DbRow row : new QueryBuilder().table("t").orderBy("id", Direction.ASC).query()) {
+            int index = keys.indexOf(row.getLong("id"));
+            assertEquals(rows.get(index).get("name"), row.getString("name"));
+        }
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(Collections.singletonMap("name", "n" + i));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,38 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.connection.ConnectionFactory;
+import com.mrkirby153.bfs.connection.H2ConnectionFactory;
+import com.mrkirby153.bfs.query.grammar.Grammar;
+import com.mrkirby153.bfs.query.grammar.H2Grammar;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The base of tests running queries against an embedded H2 database. Every test gets an empty
+ * database of its own, used by query builders created without a connection factory
+ */
+abstract class DatabaseTest {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private ConnectionFactory previousFactory;
+    private Grammar previousGrammar;
+
+    @BeforeEach
+    void openDatabase() {
+        previousFactory = QueryBuilder.defaultConnectionFactory;
+        previousGrammar = QueryBuilder.DEFAULT_GRAMMAR;
+        QueryBuilder.defaultConnectionFactory = new H2ConnectionFactory(
+            "test" + databases.incrementAndGet());
+        QueryBuilder.DEFAULT_GRAMMAR = new H2Grammar();
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        DB.executeUpdate("SHUTDOWN");
+        QueryBuilder.defaultConnectionFactory = previousFactory;
+        QueryBuilder.DEFAULT_GRAMMAR = previousGrammar;
+    }
+}
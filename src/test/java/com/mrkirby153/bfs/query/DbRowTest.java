@@ -0,0 +1,100 @@
+package com.mrkirby153.bfs.query;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DbRowTest extends DatabaseTest {
+
+    private DbRow row;
+
+    @BeforeEach
+    void readRow() {
+        DB.executeUpdate(
+            "CREATE TABLE t (id BIGINT PRIMARY KEY, name VARCHAR(20), n INT, d DOUBLE)");
+        DB.executeUpdate("INSERT INTO t VALUES (1, 'one', 2, 1.5)");
+        row = new QueryBuilder().table("t").query().get(0);
+    }
+
+    @Test
+    void readsColumns() {
+        assertEquals(4, row.size());
+        assertEquals(Arrays.asList("id", "name", "n", "d"), Arrays.asList(row.keySet().toArray()));
+        assertEquals(1L, row.getLongValue("id"));
+        assertEquals("one", row.getString("name"));
+        assertEquals(2, row.getIntValue("n"));
+        assertEquals(1.5, row.getDoubleValue("d"));
+        assertFalse(row.containsKey("missing"));
+        assertNull(row.get("missing"));
+    }
+
+    @Test
+    void putsValues() {
+        row.put("n", 5L);
+        row.put("name", null);
+        row.put("extra", "value");
+        assertEquals(5L, (long) row.getLong("n"));
+        assertTrue(row.isNull("name"));
+        assertTrue(row.containsKey("name"));
+        assertEquals("value", row.getString("extra"));
+        assertEquals(5, row.size());
+    }
+
+    @Test
+    void removesValues() {
+        assertEquals("one", row.remove("name"));
+        assertFalse(row.containsKey("name"));
+        assertNull(row.get("name"));
+        assertEquals(3, row.size());
+        row.put("name", "again");
+        assertEquals("again", row.getString("name"));
+        assertEquals(4, row.size());
+    }
+
+    @Test
+    void iteratesEntries() {
+        Map<String, Object> seen = new HashMap<>();
+        for (Iterator<Entry<String, Object>> it = row.entrySet().iterator(); it.hasNext(); ) {
+            Entry<String, Object> entry = it.next();
+            seen.put(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals("id")) {
+                entry.setValue(7L);
+            } else if (entry.getKey().equals("d")) {
+                it.remove();
+            }
+        }
+        assertEquals(4, seen.size());
+        assertEquals(1L, seen.get("id"));
+        assertEquals(7L, row.getLongValue("id"));
+        assertFalse(row.containsKey("d"));
+        assertEquals(Arrays.asList("id", "name", "n"), Arrays.asList(row.keySet().toArray()));
+    }
+
+    @Test
+    void equalsMapsWithTheSameValues() {
+        Map<String, Object> copy = new HashMap<>(row);
+        assertEquals(copy, row);
+        assertEquals(row, copy);
+        assertEquals(copy.hashCode(), row.hashCode());
+    }
+
+    @Test
+    void clonesAreIndependent() {
+        DbRow clone = row.clone();
+        clone.put("n", 9);
+        clone.remove("name");
+        assertEquals(2, row.getIntValue("n"));
+        assertEquals("one", row.getString("name"));
+        assertEquals(9, clone.getIntValue("n"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.mrkirby153.bfs.query;
+
+import com.mrkirby153.bfs.query.elements.OrderElement.Direction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryBuilderTest extends DatabaseTest {
+
+    @BeforeEach
+    void createTable() {
+        DB.executeUpdate("CREATE TABLE t (id BIGINT PRIMARY KEY, k INT, name VARCHAR(20))");
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            rows.add(row(id, (int) (id * 7 % 10), "n" + id));
+        }
+        new QueryBuilder().table("t").insertBulk(rows).join();
+    }
+
+    @Test
+    void pagesThroughEveryRow() {
+        for (Direction first : Direction.values()) {
+            for (Direction second : Direction.values()) {
+                List<Object> expected = ids(new QueryBuilder().table("t").where("k", "<", 5)
+                    .orderBy("k", first).orderBy("id", second).query());
+                List<Object> paged = new ArrayList<>();
+                String cursor = null;
+                do {
+                    Page<DbRow> page = new QueryBuilder().table("t").where("k", "<", 5)
+                        .orderBy("k", first).orderBy("id", second).seekAfter(cursor).page(7);
+                    paged.addAll(ids(page.getItems()));
+                    cursor = page.getCursor();
+                } while (cursor != null);
+                assertEquals(expected, paged, first + ", " + second);
+            }
+        }
+    }
+
+    @Test
+    void pagesThroughQueriesWithOrWheres() {
+        List<Object> expected = ids(new QueryBuilder().table("t").where("k", 1).orWhere("k", 2)
+            .orderBy("id", Direction.ASC).query());
+        assertEquals(20, expected.size());
+        List<Object> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<DbRow> page = new QueryBuilder().table("t").where("k", 1).orWhere("k", 2)
+                .orderBy("id", Direction.ASC).seekAfter(cursor).page(6);
+            paged.addAll(ids(page.getItems()));
+            cursor = page.getCursor();
+            pages++;
+        } while (cursor != null && pages <= 20);
+        // Without parentheses around the where clauses, the seek only applied to the last one
+        // and the same page was read forever
+        assertEquals(4, pages);
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    void rejectsCursorsOfOtherOrders() {
+        String cursor = new QueryBuilder().table("t").orderBy("k", Direction.ASC)
+            .orderBy("id", Direction.ASC).page(2).getCursor();
+        assertThrows(IllegalArgumentException.class,
+            () -> new QueryBuilder().table("t").orderBy("id", Direction.ASC).seekAfter(cursor));
+    }
+
+    @Test
+    void upsertsOnlyTheUpdateColumns() {
+        List<Map<String, Object>> rows = Arrays.asList(row(1, 50, "changed"), row(101, 51, "new"));
+        new QueryBuilder().table("t").upsertBulk(rows, Collections.singletonList("id"),
+            Collections.singletonList("k")).join();
+        DbRow updated = new QueryBuilder().table("t").where("id", 1L).query().get(0);
+        assertEquals(50, updated.getIntValue("k"));
+        assertEquals("n1", updated.getString("name"));
+        DbRow inserted = new QueryBuilder().table("t").where("id", 101L).query().get(0);
+        assertEquals(51, inserted.getIntValue("k"));
+        assertEquals("new", inserted.getString("name"));
+    }
+
+    @Test
+    void upsertsWithoutUpdateColumnsKeepExistingRows() {
+        List<Map<String, Object>> rows = Arrays.asList(row(1, 50, "changed"), row(101, 51, "new"));
+        new QueryBuilder().table("t")
+            .upsertBulk(rows, Collections.singletonList("id"), Collections.emptyList()).join();
+        DbRow existing = new QueryBuilder().table("t").where("id", 1L).query().get(0);
+        assertEquals(7, existing.getIntValue("k"));
+        assertEquals("n1", existing.getString("name"));
+        assertEquals(101, new QueryBuilder().table("t").count());
+    }
+
+    @Test
+    void upsertsRowsSplitOverStatementsTogether() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (long id = 1; id <= 40_000; id++) {
+            rows.add(row(id, -1, id == 40_000 ? "too long for the column" : "x"));
+        }
+        assertThrows(Exception.class, () -> new QueryBuilder().table("t")
+            .upsertBulk(rows, Collections.singletonList("id"), Arrays.asList("k", "name")).join());
+        assertEquals(100, new QueryBuilder().table("t").count());
+        assertEquals(0, new QueryBuilder().table("t").where("k", -1).count());
+    }
+
+    @Test
+    void aggregatesTheRowsOfLimitedQueries() {
+        assertEquals(90, new QueryBuilder().table("t").where("k", ">", 0).count());
+        assertEquals(10, new QueryBuilder().table("t").where("k", ">", 0).limit(10).count());
+        assertEquals(5, new QueryBuilder().table("t").limit(20).offset(95).count());
+        assertEquals(100 + 99 + 98, new QueryBuilder().table("t").orderBy("id", Direction.DESC)
+            .limit(3).sum("id").longValue());
+    }
+
+    @Test
+    void pagingKeepsTheQueryLimit() {
+        QueryBuilder query = new QueryBuilder().table("t").orderBy("id", Direction.ASC);
+        query.page(5);
+        assertNull(query.getLimit());
+        assertEquals(100, query.count());
+    }
+
+    private static Map<String, Object> row(long id, int k, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("k", k);
+        row.put("name", name);
+        return row;
+    }
+
+    private static List<Object> ids(List<DbRow> rows) {
+        List<Object> ids = new ArrayList<>();
+        rows.forEach(row -> ids.add(row.get("id")));
+        return ids;
+    }
+}
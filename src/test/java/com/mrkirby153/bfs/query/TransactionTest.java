@@ -0,0 +1,111 @@
+package com.mrkirby153.bfs.query;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionTest extends DatabaseTest {
+
+    @BeforeEach
+    void createTable() {
+        DB.executeUpdate("CREATE TABLE t (id INT PRIMARY KEY)");
+    }
+
+    @Test
+    void commitsWhenTheCallbackReturns() {
+        DB.transaction(tx -> {
+            DB.executeUpdate("INSERT INTO t VALUES (1)");
+            new QueryBuilder().table("t").insertBulk(row(2)).get();
+        });
+        assertEquals(Arrays.asList(1, 2), ids());
+    }
+
+    @Test
+    void rollsBackWhenTheCallbackThrows() {
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> DB.transaction(tx -> {
+                DB.executeUpdate("INSERT INTO t VALUES (1)");
+                throw new RuntimeException("rollback");
+            }));
+        assertEquals("rollback", thrown.getMessage());
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    @Test
+    void rollsBackWhenTheCallbackThrowsAnError() {
+        assertThrows(AssertionError.class, () -> DB.transaction(tx -> {
+            DB.executeUpdate("INSERT INTO t VALUES (1)");
+            throw new AssertionError();
+        }));
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    @Test
+    void rollsBackWhenMarkedRollbackOnly() {
+        DB.transaction(tx -> {
+            DB.executeUpdate("INSERT INTO t VALUES (1)");
+            tx.setRollbackOnly();
+        });
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    @Test
+    void rollsBackWhenAQueryFails() {
+        assertThrows(IllegalStateException.class, () -> DB.transaction(tx -> {
+            DB.executeUpdate("INSERT INTO t VALUES (1)");
+            // Fails on the duplicate key without throwing to the callback
+            new QueryBuilder().table("t").insertBulk(row(1));
+        }));
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    @Test
+    void rollsBackAsyncQueriesRunInTheTransaction() {
+        assertThrows(RuntimeException.class, () -> DB.transaction(tx -> {
+            DB.executeUpdateAsync("INSERT INTO t VALUES (1)").get();
+            throw new RuntimeException("rollback");
+        }));
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    @Test
+    void rollsBackNestedTransactionsToTheirSavepoint() {
+        DB.transaction(tx -> {
+            DB.executeUpdate("INSERT INTO t VALUES (1)");
+            assertThrows(RuntimeException.class, () -> DB.transaction(nested -> {
+                assertTrue(nested.isNested());
+                DB.executeUpdate("INSERT INTO t VALUES (2)");
+                throw new RuntimeException("rollback");
+            }));
+            DB.transaction(nested -> DB.executeUpdate("INSERT INTO t VALUES (3)"));
+            assertFalse(tx.isNested());
+        });
+        assertEquals(Arrays.asList(1, 3), ids());
+    }
+
+    @Test
+    void rollsBackNestedTransactionsWithTheirParent() {
+        assertThrows(RuntimeException.class, () -> DB.transaction(tx -> {
+            DB.transaction(nested -> DB.executeUpdate("INSERT INTO t VALUES (1)"));
+            throw new RuntimeException("rollback");
+        }));
+        assertEquals(Collections.emptyList(), ids());
+    }
+
+    private static List<Map<String, Object>> row(int id) {
+        return Collections.singletonList(Collections.singletonMap("id", id));
+    }
+
+    private static List<Integer> ids() {
+        return DB.getFirstColumnValues("SELECT id FROM t ORDER BY id");
+    }
+}